@@ -1,7 +1,52 @@
 // Required imports for the application
+import java.io.Closeable;                 // For segment file readers and writers
+import java.io.IOException;               // For file and stream read failures
+import java.io.ByteArrayInputStream;      // For replaying generated input in benchmarks
+import java.io.InputStream;               // For reading prices from stdin
+import java.io.OutputStream;              // For discarding prompts during benchmarks
+import java.io.PrintStream;               // For swapping System.out during benchmarks
+import java.io.UncheckedIOException;      // For write failures inside price sinks
+import java.math.BigDecimal;              // For exact fixed-point fallback parsing
+import java.math.RoundingMode;            // For rounding extra fixed-point digits
+import java.lang.management.GarbageCollectorMXBean; // For GC counts in benchmarks
+import java.lang.management.ManagementFactory;      // For allocation and GC statistics
+import java.nio.ByteBuffer;               // For chunked channel reads and off-heap columns
+import java.nio.ByteOrder;                // For native-order off-heap columns
+import java.nio.DoubleBuffer;             // For zero-copy price column views
+import java.nio.LongBuffer;               // For zero-copy timestamp column views
+import java.nio.channels.Channels;        // For adapting streams to channels
+import java.nio.MappedByteBuffer;         // For memory-mapped segment files
+import java.nio.channels.FileChannel;     // For NIO file reads
+import java.nio.channels.ReadableByteChannel; // Common source for files and stdin
+import java.nio.charset.StandardCharsets; // For decoding fallback number tokens
+import java.nio.file.Files;               // For segment file sizes
+import java.nio.file.Path;                // For price file locations
+import java.nio.file.Paths;               // For resolving command line paths
+import java.nio.file.StandardCopyOption;  // For moving finished segment files into place
+import java.nio.file.StandardOpenOption;  // For opening price files read-only
 import java.util.ArrayList;  // For dynamic list operations
+import java.util.Arrays;     // For trimming and growing primitive arrays
+import java.util.Collections; // For read-only views
+import java.util.Comparator;  // For ranking backtest results
 import java.util.List;      // For list interface
+import java.util.Map;       // For symbol lookups
+import java.util.Objects;    // For index range checks
+import java.util.OptionalDouble; // For pipeline results that may be empty
+import java.util.Random;     // For generating benchmark data
 import java.util.Scanner;   // For user input
+import java.util.Set;       // For listing stored symbols
+import java.util.concurrent.ConcurrentHashMap; // For the per-symbol store
+import java.util.concurrent.ForkJoinPool;  // For parallel aggregation
+import java.util.concurrent.ForkJoinTask;  // For running correlation tiles together
+import java.util.concurrent.RecursiveAction; // For correlation tile tasks
+import java.util.concurrent.RecursiveTask; // For splitting aggregation work
+import java.util.function.Consumer;        // For pipeline sources
+import java.util.function.DoubleConsumer;  // For streaming parsed prices
+import java.util.function.DoublePredicate; // For pipeline filters
+import java.util.function.DoubleUnaryOperator; // For pipeline transforms
+import java.util.function.ToDoubleFunction;    // For window indicator selection
+import java.util.stream.Collectors;            // For gathering parallel backtest results
+import java.util.zip.CRC32;                // For segment block checksums
 
 /**
  * StockAnalyzerApp - A console-based application for analyzing stock prices
@@ -12,12 +57,15 @@ public class w4a {
     // Class-level Scanner object for handling all user input throughout the application
     // Static because we only need one instance shared across all method calls
     private static Scanner scanner = new Scanner(System.in);
+    // Tolerance used when comparing two prices for equality
+    private static final double PRICE_EPSILON = 0.000001;
 
     /**
      * Displays the main menu interface to the user
      * This method prints all available options for the stock price analyzer
      * The menu is displayed in a numbered format for easy selection
-     * Options range from 1-7, covering all major functionalities of the application
+     * Options range from 1-9, covering all major functionalities of the application;
+     * options added later take the next free number so existing choices keep theirs
      */
     public static void displayMenu() {
         // Print a blank line for better visual separation between operations
@@ -29,8 +77,10 @@ public class w4a {
         System.out.println("4. Find maximum price");        // Maximum value finder
         System.out.println("5. Count occurrences of a price"); // Frequency counter
         System.out.println("6. View cumulative sums");      // Running total display
+        System.out.println("8. Calculate price percentiles"); // Median and tail prices
+        System.out.println("9. Find max/min between two days"); // Range extremes
         System.out.println("7. Exit");                      // Program termination
-        System.out.print("Enter your choice (1-7): ");     // Prompt for user input
+        System.out.print("Enter your choice (1-9): ");     // Prompt for user input
     }
 
     /**
@@ -39,6 +89,15 @@ public class w4a {
      * @return double[] An array containing all entered stock prices
      */
     public static double[] getStockPrices() {
+        return getStockPrices(null);
+    }
+
+    /**
+     * Collects stock prices from user input, also passing each price to an observer
+     * @param observer Receives every valid price as it is entered; may be null
+     * @return double[] An array containing all entered stock prices
+     */
+    public static double[] getStockPrices(DoubleConsumer observer) {
         // ArrayList for dynamic size management during input collection
         List<Double> pricesList = new ArrayList<>();
         System.out.println("\nEnter stock prices (enter a non-number to finish):");
@@ -50,6 +109,9 @@ public class w4a {
                 String input = scanner.nextLine();        // Get user input as string
                 double price = Double.parseDouble(input); // Convert string to double
                 pricesList.add(price);                   // Add valid price to list
+                if (observer != null) {
+                    observer.accept(price);              // e.g. feed a quantile sketch
+                }
             } catch (NumberFormatException e) {
                 // Exit loop when non-numeric input is detected
                 break;
@@ -76,11 +138,8 @@ public class w4a {
             return 0;
         }
         
-        // Calculate sum using running total
-        double sum = 0;
-        for (double price : prices) {
-            sum += price;
-        }
+        // Deterministic pairwise sum; large arrays are split across cores
+        double sum = AggregationKernels.sum(prices, 0, prices.length);
         // Return average by dividing sum by count of prices
         return sum / prices.length;
     }
@@ -97,15 +156,11 @@ public class w4a {
             return Double.MIN_VALUE;  // Return smallest possible double value for empty/null arrays
         }
         
-        // Start with first price as maximum
-        double maxPrice = prices[0];
-        // Compare each price against current maximum
-        for (double price : prices) {
-            if (price > maxPrice) {
-                maxPrice = price;
-            }
+        // A leading NaN never loses a '>' comparison, so it has always been the result
+        if (Double.isNaN(prices[0])) {
+            return prices[0];
         }
-        return maxPrice;
+        return AggregationKernels.max(prices, 0, prices.length);
     }
 
     /**
@@ -121,15 +176,72 @@ public class w4a {
             return 0;
         }
         
-        int count = 0;
-        for (double price : prices) {
-            // Use epsilon comparison for floating-point equality
-            // This accounts for small rounding errors in floating-point arithmetic
-            if (Math.abs(price - targetPrice) < 0.000001) {
-                count++;
-            }
+        // Use epsilon comparison for floating-point equality
+        // This accounts for small rounding errors in floating-point arithmetic
+        return AggregationKernels.countNear(prices, 0, prices.length, targetPrice, PRICE_EPSILON);
+    }
+
+    /**
+     * Counts how many times a specific price appears using a prebuilt frequency index
+     * Same epsilon semantics as the array version, in O(log n) per query
+     * @param index Frequency index built over the stock prices
+     * @param targetPrice The specific price to count
+     * @return int Number of times the target price appears
+     */
+    public static int countOccurrences(FrequencyIndex index, double targetPrice) {
+        if (index == null) {
+            return 0;
+        }
+        return index.count(targetPrice);
+    }
+
+    /**
+     * Calculates the arithmetic mean of a price column view
+     * Reads the prices between the buffer's position and limit without copying
+     * @param prices View of stock prices, e.g. from PriceStore
+     * @return double The average price, or 0 if the view is empty/null
+     */
+    public static double calculateAveragePrice(DoubleBuffer prices) {
+        if (prices == null || !prices.hasRemaining()) {
+            return 0;
+        }
+
+        // Same kernel and summation order as the array version, so both give the same average
+        double sum = AggregationKernels.sum(prices, prices.position(), prices.limit());
+        return sum / prices.remaining();
+    }
+
+    /**
+     * Determines the highest price in a price column view
+     * @param prices View of stock prices, e.g. from PriceStore
+     * @return double The maximum price, or Double.MIN_VALUE if the view is empty/null
+     */
+    public static double findMaximumPrice(DoubleBuffer prices) {
+        if (prices == null || !prices.hasRemaining()) {
+            return Double.MIN_VALUE;
+        }
+
+        // A leading NaN never loses a '>' comparison, so it has always been the result
+        double first = prices.get(prices.position());
+        if (Double.isNaN(first)) {
+            return first;
+        }
+        return AggregationKernels.max(prices, prices.position(), prices.limit());
+    }
+
+    /**
+     * Counts how many times a specific price appears in a price column view
+     * Uses the same epsilon comparison as the array version
+     * @param prices View of stock prices, e.g. from PriceStore
+     * @param targetPrice The specific price to count
+     * @return int Number of times the target price appears
+     */
+    public static int countOccurrences(DoubleBuffer prices, double targetPrice) {
+        if (prices == null) {
+            return 0;
         }
-        return count;
+
+        return AggregationKernels.countNear(prices, prices.position(), prices.limit(), targetPrice, PRICE_EPSILON);
     }
 
     /**
@@ -145,12 +257,8 @@ public class w4a {
             return cumulativeSum;  // Return empty list for null/empty input
         }
 
-        double sum = 0;
-        // Calculate running total and add each sum to list
-        for (double price : prices) {
-            sum += price;
-            cumulativeSum.add(sum);
-        }
+        // Running totals are produced lazily and collected in a single pass
+        PriceSeries.of(prices).cumulativeSum().forEach(cumulativeSum::add);
         return cumulativeSum;
     }
 
@@ -174,14 +282,554 @@ public class w4a {
         }
     }
 
+    /**
+     * Displays the median and tail percentiles estimated by a quantile sketch
+     * @param sketch Sketch fed with the current prices
+     */
+    public static void displayPercentiles(QuantileSketch sketch) {
+        if (sketch == null || sketch.getCount() == 0) {
+            System.out.println("No data available.");
+            return;
+        }
+
+        System.out.println("\nPrice Percentiles:");
+        double[] percentiles = {50, 90, 95, 99};
+        for (double percentile : percentiles) {
+            System.out.printf("p%.0f: $%.2f%n", percentile, sketch.quantile(percentile / 100));
+        }
+    }
+
+    /**
+     * Displays a one-pass statistical summary of the prices
+     * @param summary Summary produced by PriceSummary
+     */
+    public static void displaySummary(PriceSummary summary) {
+        if (summary == null || summary.getCount() == 0) {
+            System.out.println("No data available.");
+            return;
+        }
+
+        System.out.println("\nPrice Summary:");
+        System.out.printf("Count: %d%n", summary.getCount());
+        System.out.printf("Average price: $%.2f%n", summary.getMean());
+        System.out.printf("Minimum price: $%.2f (day %d)%n", summary.getMin(), summary.getArgMin() + 1);
+        System.out.printf("Maximum price: $%.2f (day %d)%n", summary.getMax(), summary.getArgMax() + 1);
+        System.out.printf("Standard deviation: $%.2f%n", summary.getStandardDeviation());
+        System.out.printf("First price: $%.2f, last price: $%.2f%n", summary.getFirst(), summary.getLast());
+    }
+
+    /**
+     * Loads a price file (or stdin when source is "-") without any prompts
+     * and prints load throughput together with the basic statistics
+     * @param source Path of the price file, or "-" to read from stdin
+     */
+    public static void runLoadCommand(String source) {
+        try {
+            QuantileSketch sketch = new QuantileSketch();
+            PriceLoader.LoadResult result;
+            if ("-".equals(source)) {
+                result = PriceLoader.loadStream(System.in, sketch);
+            } else if (PriceSegmentFile.isSegmentFile(Paths.get(source))) {
+                // Binary segments decode straight to prices without any text parsing
+                long start = System.nanoTime();
+                try (PriceSegmentFile.Reader reader = PriceSegmentFile.Reader.open(Paths.get(source))) {
+                    result = new PriceLoader.LoadResult(reader.readAllPrices(), System.nanoTime() - start);
+                }
+                for (double price : result.getPrices()) {
+                    sketch.accept(price);
+                }
+            } else {
+                result = PriceLoader.loadFile(Paths.get(source), sketch);
+            }
+            double[] prices = result.getPrices();
+
+            System.out.printf("Loaded %d prices in %.3f s (%.0f rows/sec)%n",
+                prices.length, result.getElapsedNanos() / 1e9, result.getRowsPerSecond());
+            displaySummary(PriceSummary.parallelOf(prices));
+            displayPercentiles(sketch);
+        } catch (IOException e) {
+            System.out.println("Could not read prices: " + e.getMessage());
+        } catch (NumberFormatException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Loads a price file (or stdin when source is "-") into the long-based
+     * fixed-point representation and prints statistics from the integer kernels
+     * @param scaleText Number of decimal places to keep, e.g. "2" for cents
+     * @param source Path of the price file, or "-" to read from stdin
+     */
+    public static void runFixedLoadCommand(String scaleText, String source) {
+        try {
+            int scale = Integer.parseInt(scaleText);
+            long start = System.nanoTime();
+            FixedPointPrices prices = "-".equals(source)
+                ? FixedPointPrices.load(Channels.newChannel(System.in), scale)
+                : FixedPointPrices.loadFile(Paths.get(source), scale);
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("Loaded %d prices at scale %d in %.3f s (%.0f rows/sec)%n",
+                prices.size(), scale, elapsed / 1e9, elapsed == 0 ? 0 : prices.size() * 1e9 / elapsed);
+            if (prices.size() == 0) {
+                System.out.println("No data available.");
+                return;
+            }
+            System.out.println("Total: $" + prices.format(prices.sum()));
+            System.out.printf("Average price: $%.2f%n", prices.average());
+            System.out.println("Maximum price: $" + prices.format(prices.max()));
+        } catch (IOException e) {
+            System.out.println("Could not read prices: " + e.getMessage());
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            // Also covers NumberFormatException from a bad scale or price
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Loads a price file (or stdin when source is "-") and backtests a grid of
+     * moving-average crossover strategies on it, printing the best ten by PnL
+     * @param source Path of the price file, or "-" to read from stdin
+     */
+    public static void runBacktestCommand(String source) {
+        try {
+            double[] prices = "-".equals(source)
+                ? PriceLoader.loadStream(System.in).getPrices()
+                : PriceLoader.loadFile(Paths.get(source)).getPrices();
+            if (prices.length < 2) {
+                System.out.println("Not enough data to backtest.");
+                return;
+            }
+
+            Backtester backtester = new Backtester(prices);
+            List<Backtester.Strategy> strategies = Backtester.movingAverageGrid(2, 50, 10, 200);
+            long start = System.nanoTime();
+            List<Backtester.Result> results = backtester.run(strategies);
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("Evaluated %d strategies over %d days in %.3f s (%.0f strategies/sec)%n",
+                results.size(), prices.length, elapsed / 1e9, results.size() * 1e9 / elapsed);
+            results.sort(Comparator.comparingDouble(Backtester.Result::getProfit).reversed());
+            System.out.println("\nTop strategies:");
+            for (int i = 0; i < Math.min(10, results.size()); i++) {
+                Backtester.Result result = results.get(i);
+                System.out.printf("%-16s PnL: $%.2f, max drawdown: $%.2f, trades: %d%n",
+                    result.getName(), result.getProfit(), result.getMaxDrawdown(), result.getTrades());
+            }
+        } catch (IOException e) {
+            System.out.println("Could not read prices: " + e.getMessage());
+        } catch (NumberFormatException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Converts a text price file (or stdin when source is "-") into a compressed
+     * binary segment file; timestamps are the zero-based row numbers.
+     * The segment is written to a temporary sibling file and moved into place
+     * only once it is complete, so a failed conversion leaves no partial file
+     * @param source Path of the text price file, or "-" to read from stdin
+     * @param target Path of the segment file to create
+     */
+    public static void runConvertCommand(String source, String target) {
+        Path targetPath = Paths.get(target);
+        Path tempPath = targetPath.resolveSibling(targetPath.getFileName() + ".tmp");
+        try {
+            long count;
+            try (PriceSegmentFile.Writer writer = new PriceSegmentFile.Writer(tempPath)) {
+                long[] row = {0};
+                DoubleConsumer sink = price -> {
+                    try {
+                        writer.append(row[0]++, price);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                };
+                count = "-".equals(source)
+                    ? PriceLoader.stream(Channels.newChannel(System.in), sink)
+                    : PriceLoader.streamFile(Paths.get(source), sink);
+            }
+            Files.move(tempPath, targetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            System.out.printf("Wrote %d prices to %s (%d bytes)%n", count, target, Files.size(targetPath));
+        } catch (IOException e) {
+            System.out.println("Could not convert prices: " + e.getMessage());
+        } catch (UncheckedIOException e) {
+            System.out.println("Could not convert prices: " + e.getCause().getMessage());
+        } catch (NumberFormatException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(tempPath);  // Only still there if the conversion failed
+            } catch (IOException e) {
+                System.out.println("Could not remove " + tempPath + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Streams ticks from a price file (or stdin when source is "-") through the
+     * rolling analytics engine and prints the indicators after the last tick
+     * @param windowList Comma-separated window sizes, e.g. "5,20,50"
+     * @param source Path of the price file, or "-" to read from stdin
+     */
+    public static void runRollingCommand(String windowList, String source) {
+        try {
+            String[] parts = windowList.split(",");
+            int[] windowSizes = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                windowSizes[i] = Integer.parseInt(parts[i].trim());
+            }
+            RollingAnalytics engine = new RollingAnalytics(windowSizes);
+
+            long start = System.nanoTime();
+            long ticks = "-".equals(source)
+                ? PriceLoader.stream(Channels.newChannel(System.in), engine::onTick)
+                : PriceLoader.streamFile(Paths.get(source), engine::onTick);
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("Processed %d ticks in %.3f s (%.0f ticks/sec)%n",
+                ticks, elapsed / 1e9, elapsed == 0 ? 0 : ticks * 1e9 / elapsed);
+            for (int w = 0; w < engine.getWindowCount(); w++) {
+                if (!engine.isReady(w)) {
+                    System.out.printf("Window %d: not enough data%n", engine.getWindowSize(w));
+                    continue;
+                }
+                System.out.printf("Window %d: MA $%.2f, EMA $%.2f, max $%.2f, min $%.2f, stddev $%.2f%n",
+                    engine.getWindowSize(w), engine.movingAverage(w), engine.ema(w),
+                    engine.rollingMax(w), engine.rollingMin(w), engine.rollingStdDev(w));
+            }
+        } catch (IOException e) {
+            System.out.println("Could not read prices: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            // Also covers NumberFormatException from bad window sizes or prices
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Counts the days on which the moving average of a price file (or stdin when
+     * source is "-") was above a threshold, in one fused pipeline pass:
+     * series.window(size).mean().filter(x -> x > threshold).count()
+     * @param sizeText Number of prices per window
+     * @param thresholdText Price the moving average is compared with
+     * @param source Path of the price file, or "-" to read from stdin
+     */
+    public static void runWindowCountCommand(String sizeText, String thresholdText, String source) {
+        try {
+            int size = Integer.parseInt(sizeText);
+            double threshold = Double.parseDouble(thresholdText);
+            double[] prices = "-".equals(source)
+                ? PriceLoader.loadStream(System.in).getPrices()
+                : PriceLoader.loadFile(Paths.get(source)).getPrices();
+
+            long days = PriceSeries.of(prices).window(size).mean().filter(mean -> mean > threshold).count();
+            long windows = Math.max(0, prices.length - size + 1);
+            System.out.printf("The %d-day moving average was above $%.2f on %d of %d days%n",
+                size, threshold, days, windows);
+        } catch (IOException e) {
+            System.out.println("Could not read prices: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            // Also covers NumberFormatException from bad arguments or prices
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the ticks of a segment file between two timestamps, decoding only
+     * the blocks the block index says can overlap them, and summarizes them.
+     * Segments written by --convert are timestamped with zero-based row numbers
+     * @param segment Path of the segment file
+     * @param fromText First timestamp included
+     * @param toText Last timestamp included
+     */
+    public static void runSegmentRangeCommand(String segment, String fromText, String toText) {
+        try {
+            long fromTimestamp = Long.parseLong(fromText);
+            long toTimestamp = Long.parseLong(toText);
+            try (PriceSegmentFile.Reader reader = PriceSegmentFile.Reader.open(Paths.get(segment))) {
+                long start = System.nanoTime();
+                PriceSegmentFile.Block block = reader.readRange(fromTimestamp, toTimestamp);
+                long elapsed = System.nanoTime() - start;
+
+                System.out.printf("Read %d of %d ticks (%d blocks in file) in %.3f ms%n",
+                    block.size(), reader.getPointCount(), reader.getBlockCount(), elapsed / 1e6);
+                displaySummary(PriceSummary.of(block.getPrices()));
+            }
+        } catch (IOException e) {
+            System.out.println("Could not read segment: " + e.getMessage());
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid timestamp: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Loads each file into its own off-heap column of a PriceStore; the symbol
+     * is the file name without its extension. Segment files keep their stored
+     * timestamps, text files are timestamped with their zero-based row numbers
+     * @param store Store to load into
+     * @param sources Paths of text price files or segment files
+     * @return String[] The symbols, in the order of the files
+     * @throws IOException if a file cannot be read
+     * @throws IllegalArgumentException if two files give the same symbol
+     */
+    static String[] loadStore(PriceStore store, String[] sources) throws IOException {
+        String[] symbols = new String[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            Path path = Paths.get(sources[i]);
+            String name = path.getFileName().toString();
+            int dot = name.lastIndexOf('.');
+            symbols[i] = dot > 0 ? name.substring(0, dot) : name;
+            if (store.get(symbols[i]) != null) {
+                throw new IllegalArgumentException("Duplicate symbol " + symbols[i] + " from " + sources[i]);
+            }
+
+            PriceStore.SeriesColumn column = store.series(symbols[i]);
+            if (PriceSegmentFile.isSegmentFile(path)) {
+                try (PriceSegmentFile.Reader reader = PriceSegmentFile.Reader.open(path)) {
+                    reader.readInto(column);
+                }
+            } else {
+                long[] row = {0};
+                PriceLoader.streamFile(path, price -> column.append(row[0]++, price));
+            }
+        }
+        return symbols;
+    }
+
+    /**
+     * Loads several price or segment files into the off-heap PriceStore and
+     * prints per-symbol statistics computed straight from zero-copy column views
+     * @param sources Paths of text price files or segment files, one per symbol
+     */
+    public static void runSymbolsCommand(String[] sources) {
+        try {
+            PriceStore store = new PriceStore();
+            long start = System.nanoTime();
+            String[] symbols = loadStore(store, sources);
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("Loaded %d symbols in %.3f s%n", symbols.length, elapsed / 1e9);
+            for (String symbol : symbols) {
+                PriceStore.SeriesColumn column = store.get(symbol);
+                if (column.size() == 0) {
+                    System.out.printf("%-12s no data%n", symbol);
+                    continue;
+                }
+                DoubleBuffer prices = column.prices();
+                System.out.printf("%-12s %d prices, average $%.2f, maximum $%.2f%n",
+                    symbol, column.size(), calculateAveragePrice(prices), findMaximumPrice(prices));
+            }
+        } catch (IOException e) {
+            System.out.println("Could not read prices: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            // Also covers NumberFormatException from a bad price
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Loads several aligned price or segment files into the off-heap store and
+     * prints their pairwise correlation matrix
+     * @param sources Paths of text price files or segment files, one per symbol,
+     *                all with the same number of prices
+     */
+    public static void runCorrelateCommand(String[] sources) {
+        try {
+            PriceStore store = new PriceStore();
+            String[] symbols = loadStore(store, sources);
+            long start = System.nanoTime();
+            CorrelationMatrix matrix = CorrelationMatrix.compute(store, symbols);
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("Correlated %d series of %d prices in %.3f s%n",
+                symbols.length, store.get(symbols[0]).size(), elapsed / 1e9);
+            System.out.printf("%-12s", "");
+            for (String symbol : symbols) {
+                System.out.printf(" %8.8s", symbol);
+            }
+            System.out.println();
+            double[][] correlation = matrix.getCorrelation();
+            for (int i = 0; i < symbols.length; i++) {
+                System.out.printf("%-12.12s", symbols[i]);
+                for (int j = 0; j < symbols.length; j++) {
+                    System.out.printf(" %8.4f", correlation[i][j]);
+                }
+                System.out.println();
+            }
+        } catch (IOException e) {
+            System.out.println("Could not read prices: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            // Also covers NumberFormatException and series of different lengths
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Loads a price file (or stdin when source is "-") and counts how often each
+     * price level listed in a second file occurs, with the same epsilon
+     * matching as countOccurrences. The prices are indexed once and every level
+     * is then answered by binary search
+     * @param source Path of the price file, or "-" to read from stdin
+     * @param levelsFile Path of a file listing the price levels to count
+     */
+    public static void runCountCommand(String source, String levelsFile) {
+        try {
+            double[] levels = PriceLoader.loadFile(Paths.get(levelsFile)).getPrices();
+            double[] prices = "-".equals(source)
+                ? PriceLoader.loadStream(System.in).getPrices()
+                : PriceLoader.loadFile(Paths.get(source)).getPrices();
+
+            long start = System.nanoTime();
+            FrequencyIndex index = new FrequencyIndex(prices);
+            int[] counts = index.countAll(levels);
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("Counted %d levels over %d prices in %.3f s%n", levels.length, prices.length, elapsed / 1e9);
+            for (int i = 0; i < levels.length; i++) {
+                System.out.printf("$%.2f: %d%n", levels[i], counts[i]);
+            }
+        } catch (IOException e) {
+            System.out.println("Could not read prices: " + e.getMessage());
+        } catch (NumberFormatException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Streams a price file (or stdin when source is "-") into a segment tree and
+     * prints the highest and lowest price of each requested day range.
+     * The tree grows as prices arrive, so the input is never gathered into an
+     * array first and needs no O(n log n) sparse table
+     * @param source Path of the price file, or "-" to read from stdin
+     * @param ranges Day ranges such as "1:20", counted from day 1 with both ends included
+     */
+    public static void runRangeCommand(String source, String[] ranges) {
+        try {
+            int[][] days = new int[ranges.length][];
+            for (int i = 0; i < ranges.length; i++) {
+                String[] ends = ranges[i].split(":");
+                if (ends.length != 2) {
+                    throw new IllegalArgumentException("Invalid day range: " + ranges[i] + " (use first:last)");
+                }
+                days[i] = new int[] {Integer.parseInt(ends[0].trim()), Integer.parseInt(ends[1].trim())};
+            }
+
+            AppendableExtremumTree tree = new AppendableExtremumTree();
+            long ticks = "-".equals(source)
+                ? PriceLoader.stream(Channels.newChannel(System.in), tree::append)
+                : PriceLoader.streamFile(Paths.get(source), tree::append);
+            System.out.printf("Loaded %d prices%n", ticks);
+
+            for (int[] range : days) {
+                int firstDay = range[0];
+                int lastDay = range[1];
+                if (firstDay < 1 || lastDay < firstDay || lastDay > tree.size()) {
+                    System.out.printf("Days %d-%d: out of range (1-%d)%n", firstDay, lastDay, tree.size());
+                    continue;
+                }
+                int maxIndex = tree.rangeArgMax(firstDay - 1, lastDay);
+                int minIndex = tree.rangeArgMin(firstDay - 1, lastDay);
+                System.out.printf("Days %d-%d: maximum $%.2f (day %d), minimum $%.2f (day %d)%n",
+                    firstDay, lastDay, tree.get(maxIndex), maxIndex + 1, tree.get(minIndex), minIndex + 1);
+            }
+        } catch (IOException e) {
+            System.out.println("Could not read prices: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            // Also covers NumberFormatException from bad days or prices
+            System.out.println(e.getMessage());
+        }
+    }
+
     /**
      * Main program loop
      * Handles menu selection and program flow
-     * @param args Command line arguments (not used)
+     * @param args Command line arguments; "--load <file|->" runs the bulk loader,
+     *             "--load-fixed <scale> <file|->" loads into fixed-point longs,
+     *             "--convert <file|-> <segment>" writes a binary segment file,
+     *             "--rolling <w1,w2,...> <file|->" runs the rolling analytics,
+     *             "--range <file|-> <first:last>..." prints max/min per day range,
+     *             "--window-count <size> <threshold> <file|->" counts days with
+     *             the moving average above the threshold,
+     *             "--count <file|-> <levels>" counts each listed price level,
+     *             "--symbols <file>..." loads files into the off-heap store,
+     *             "--correlate <file> <file>..." prints the correlation matrix,
+     *             "--segment-range <segment> <from> <to>" reads a timestamp range,
+     *             "--check" runs the self-checks,
+     *             "--backtest <file|->" runs the strategy backtester and
+     *             "--bench [maxSize]" runs the benchmark suite instead of the menu
      */
     public static void main(String[] args) {
+        // Non-interactive modes requested on the command line
+        if (args.length == 2 && args[0].equals("--load")) {
+            runLoadCommand(args[1]);
+            return;
+        }
+        if (args.length == 2 && args[0].equals("--backtest")) {
+            runBacktestCommand(args[1]);
+            return;
+        }
+        if (args.length == 3 && args[0].equals("--load-fixed")) {
+            runFixedLoadCommand(args[1], args[2]);
+            return;
+        }
+        if (args.length == 3 && args[0].equals("--convert")) {
+            runConvertCommand(args[1], args[2]);
+            return;
+        }
+        if (args.length >= 1 && args.length <= 2 && args[0].equals("--bench")) {
+            try {
+                int maxSize = args.length == 2 ? Integer.parseInt(args[1]) : BenchmarkHarness.DEFAULT_MAX_SIZE;
+                BenchmarkHarness.runAll(maxSize);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid benchmark size: " + args[1]);
+            }
+            return;
+        }
+        if (args.length == 3 && args[0].equals("--rolling")) {
+            runRollingCommand(args[1], args[2]);
+            return;
+        }
+        if (args.length == 4 && args[0].equals("--window-count")) {
+            runWindowCountCommand(args[1], args[2], args[3]);
+            return;
+        }
+        if (args.length == 4 && args[0].equals("--segment-range")) {
+            runSegmentRangeCommand(args[1], args[2], args[3]);
+            return;
+        }
+        if (args.length >= 3 && args[0].equals("--correlate")) {
+            runCorrelateCommand(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length >= 2 && args[0].equals("--symbols")) {
+            runSymbolsCommand(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length == 3 && args[0].equals("--count")) {
+            runCountCommand(args[1], args[2]);
+            return;
+        }
+        if (args.length >= 3 && args[0].equals("--range")) {
+            runRangeCommand(args[1], Arrays.copyOfRange(args, 2, args.length));
+            return;
+        }
+        if (args.length == 1 && args[0].equals("--check")) {
+            if (!SelfCheck.runAll()) {
+                System.exit(1);
+            }
+            return;
+        }
+
         // Initialize empty array for storing prices
         double[] prices = new double[0];
+        // Prefix sums over prices for cumulative sums, built on first use and discarded when prices change
+        PrefixSumIndex sumIndex = null;
+        // Range max/min lookup for day-range queries, built on first use like sumIndex
+        RangeExtremumIndex extremumIndex = null;
+        // Sorted price lookup for occurrence counts, built on first use like sumIndex
+        FrequencyIndex frequencyIndex = null;
+        // Percentile sketch, fed while prices are entered
+        QuantileSketch sketch = new QuantileSketch();
         
         // Main program loop
         while (true) {
@@ -191,7 +839,11 @@ public class w4a {
             // Process user selection
             switch (choice) {
                 case "1":  // Enter new prices
-                    prices = getStockPrices();
+                    sketch = new QuantileSketch();
+                    prices = getStockPrices(sketch);
+                    sumIndex = null;
+                    extremumIndex = null;
+                    frequencyIndex = null;
                     System.out.println("Stock prices updated.");
                     break;
 
@@ -200,6 +852,7 @@ public class w4a {
                     break;
 
                 case "3":  // Calculate and display average
+                    // One query needs one pass, not an index of 16 bytes per price
                     double average = calculateAveragePrice(prices);
                     System.out.printf("Average price: $%.2f%n", average);
                     break;
@@ -217,7 +870,10 @@ public class w4a {
                     System.out.print("Enter price to count: ");
                     try {
                         double target = Double.parseDouble(scanner.nextLine());
-                        int occurrences = countOccurrences(prices, target);
+                        if (frequencyIndex == null) {
+                            frequencyIndex = new FrequencyIndex(prices);
+                        }
+                        int occurrences = countOccurrences(frequencyIndex, target);
                         System.out.printf("Price $%.2f occurs %d times%n", target, occurrences);
                     } catch (NumberFormatException e) {
                         System.out.println("Invalid price entered.");
@@ -225,11 +881,13 @@ public class w4a {
                     break;
 
                 case "6":  // Display cumulative sums
-                    List<Double> cumulativeSums = computeCumulativeSum(prices);
-                    if (!cumulativeSums.isEmpty()) {
+                    if (sumIndex == null) {
+                        sumIndex = new PrefixSumIndex(prices);
+                    }
+                    if (sumIndex.size() > 0) {
                         System.out.println("\nCumulative Sums:");
-                        for (int i = 0; i < cumulativeSums.size(); i++) {
-                            System.out.printf("Day %d: $%.2f%n", i + 1, cumulativeSums.get(i));
+                        for (int day = 1; day <= sumIndex.size(); day++) {
+                            System.out.printf("Day %d: $%.2f%n", day, sumIndex.prefixSum(day));
                         }
                     } else {
                         System.out.println("No data available.");
@@ -241,8 +899,3716 @@ public class w4a {
                     scanner.close();  // Clean up resources
                     return;
 
+                case "8":  // Estimate and display percentiles
+                    displayPercentiles(sketch);
+                    break;
+
+                case "9":  // Max, min and average over a range of days
+                    if (prices.length == 0) {
+                        System.out.println("No data available.");
+                        break;
+                    }
+                    try {
+                        System.out.print("Enter first day: ");
+                        int firstDay = Integer.parseInt(scanner.nextLine().trim());
+                        System.out.print("Enter last day: ");
+                        int lastDay = Integer.parseInt(scanner.nextLine().trim());
+                        if (firstDay < 1 || lastDay < firstDay || lastDay > prices.length) {
+                            System.out.printf("Days must satisfy 1 <= first <= last <= %d.%n", prices.length);
+                            break;
+                        }
+                        if (extremumIndex == null) {
+                            extremumIndex = new RangeExtremumIndex(prices);
+                        }
+                        if (sumIndex == null) {
+                            sumIndex = new PrefixSumIndex(prices);
+                        }
+                        int maxDay = extremumIndex.rangeArgMax(firstDay - 1, lastDay) + 1;
+                        int minDay = extremumIndex.rangeArgMin(firstDay - 1, lastDay) + 1;
+                        System.out.printf("Days %d-%d: maximum $%.2f (day %d), minimum $%.2f (day %d), average $%.2f%n",
+                            firstDay, lastDay, prices[maxDay - 1], maxDay, prices[minDay - 1], minDay,
+                            sumIndex.rangeAverage(firstDay - 1, lastDay));
+                    } catch (NumberFormatException e) {
+                        System.out.println("Invalid day entered.");
+                    }
+                    break;
+
                 default:  // Invalid input handling
-                    System.out.println("Invalid choice. Please enter a number between 1 and 7.");
+                    System.out.println("Invalid choice. Please enter a number between 1 and 9.");
+            }
+        }
+    }
+
+    /**
+     * AggregationKernels - Unrolled and parallel sum/max loops over price arrays
+     * Each block is processed with four independent accumulators so the CPU can
+     * overlap the additions. Sums always use the same pairwise tree over fixed
+     * blocks, so the serial and fork-join paths return bit-for-bit identical results.
+     * Arrays shorter than PARALLEL_THRESHOLD are always processed serially.
+     */
+    static class AggregationKernels {
+        private static final int BLOCK_SIZE = 1024;              // Leaf size of the pairwise tree
+        static final int PARALLEL_THRESHOLD = 1 << 18;           // Smallest range worth splitting
+        static final int PARALLEL_GRAIN = 1 << 16;               // Leaf size of a fork-join task
+
+        /**
+         * Sums prices[fromIndex .. toIndex) with pairwise summation,
+         * using the fork-join pool for large ranges
+         * @return double The sum, or 0 for an empty range
+         * @throws IndexOutOfBoundsException if the range is invalid
+         */
+        public static double sum(double[] prices, int fromIndex, int toIndex) {
+            Objects.checkFromToIndex(fromIndex, toIndex, prices.length);
+            if (toIndex - fromIndex < PARALLEL_THRESHOLD || ForkJoinPool.getCommonPoolParallelism() < 2) {
+                return pairwiseSum(prices, fromIndex, toIndex);
+            }
+            return ForkJoinPool.commonPool().invoke(new SumTask(prices, fromIndex, toIndex));
+        }
+
+        /**
+         * Sums prices[fromIndex .. toIndex) on the calling thread only
+         * Returns exactly the same value as sum()
+         */
+        public static double serialSum(double[] prices, int fromIndex, int toIndex) {
+            Objects.checkFromToIndex(fromIndex, toIndex, prices.length);
+            return pairwiseSum(prices, fromIndex, toIndex);
+        }
+
+        /**
+         * Finds the largest non-NaN price in prices[fromIndex .. toIndex),
+         * using the fork-join pool for large ranges
+         * @return double The maximum, or Double.NEGATIVE_INFINITY if there is none
+         * @throws IndexOutOfBoundsException if the range is invalid
+         */
+        public static double max(double[] prices, int fromIndex, int toIndex) {
+            Objects.checkFromToIndex(fromIndex, toIndex, prices.length);
+            if (toIndex - fromIndex < PARALLEL_THRESHOLD || ForkJoinPool.getCommonPoolParallelism() < 2) {
+                return blockMax(prices, fromIndex, toIndex);
+            }
+            return ForkJoinPool.commonPool().invoke(new MaxTask(prices, fromIndex, toIndex));
+        }
+
+        /**
+         * Finds the largest non-NaN price in prices[fromIndex .. toIndex) on the calling thread
+         */
+        public static double serialMax(double[] prices, int fromIndex, int toIndex) {
+            Objects.checkFromToIndex(fromIndex, toIndex, prices.length);
+            return blockMax(prices, fromIndex, toIndex);
+        }
+
+        /**
+         * Sums prices.get(fromIndex .. toIndex) from a buffer, e.g. an off-heap column
+         * Follows the same pairwise tree as the array version and returns the same value
+         * @return double The sum, or 0 for an empty range
+         * @throws IndexOutOfBoundsException if the range is outside the buffer's limit
+         */
+        public static double sum(DoubleBuffer prices, int fromIndex, int toIndex) {
+            Objects.checkFromToIndex(fromIndex, toIndex, prices.limit());
+            if (toIndex - fromIndex < PARALLEL_THRESHOLD || ForkJoinPool.getCommonPoolParallelism() < 2) {
+                return pairwiseSum(prices, fromIndex, toIndex, new double[BLOCK_SIZE]);
+            }
+            return ForkJoinPool.commonPool().invoke(new SumTask(prices, fromIndex, toIndex));
+        }
+
+        /**
+         * Finds the largest non-NaN price in prices.get(fromIndex .. toIndex) from a buffer
+         * @return double The maximum, or Double.NEGATIVE_INFINITY if there is none
+         * @throws IndexOutOfBoundsException if the range is outside the buffer's limit
+         */
+        public static double max(DoubleBuffer prices, int fromIndex, int toIndex) {
+            Objects.checkFromToIndex(fromIndex, toIndex, prices.limit());
+            if (toIndex - fromIndex < PARALLEL_THRESHOLD || ForkJoinPool.getCommonPoolParallelism() < 2) {
+                return blockMax(prices, fromIndex, toIndex, new double[BLOCK_SIZE]);
+            }
+            return ForkJoinPool.commonPool().invoke(new MaxTask(prices, fromIndex, toIndex));
+        }
+
+        /**
+         * Counts prices in prices[fromIndex .. toIndex) within epsilon of a target
+         * @return int Number of matching prices
+         * @throws IndexOutOfBoundsException if the range is invalid
+         */
+        public static int countNear(double[] prices, int fromIndex, int toIndex, double target, double epsilon) {
+            Objects.checkFromToIndex(fromIndex, toIndex, prices.length);
+            int count = 0;
+            for (int i = fromIndex; i < toIndex; i++) {
+                if (Math.abs(prices[i] - target) < epsilon) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Counts prices in prices.get(fromIndex .. toIndex) within epsilon of a target
+         * Copies the buffer a block at a time and counts with the array kernel
+         */
+        public static int countNear(DoubleBuffer prices, int fromIndex, int toIndex, double target, double epsilon) {
+            Objects.checkFromToIndex(fromIndex, toIndex, prices.limit());
+            double[] block = new double[BLOCK_SIZE];
+            int count = 0;
+            for (int from = fromIndex; from < toIndex; from += BLOCK_SIZE) {
+                int length = Math.min(BLOCK_SIZE, toIndex - from);
+                prices.get(from, block, 0, length);
+                count += countNear(block, 0, length, target, epsilon);
+            }
+            return count;
+        }
+
+        // The split point depends only on the range, so every caller builds the same tree
+        private static int split(int fromIndex, int toIndex) {
+            int blocks = (toIndex - fromIndex + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            return fromIndex + (blocks / 2) * BLOCK_SIZE;
+        }
+
+        private static double pairwiseSum(double[] prices, int fromIndex, int toIndex) {
+            if (toIndex - fromIndex <= BLOCK_SIZE) {
+                return blockSum(prices, fromIndex, toIndex);
+            }
+            int mid = split(fromIndex, toIndex);
+            return pairwiseSum(prices, fromIndex, mid) + pairwiseSum(prices, mid, toIndex);
+        }
+
+        // Buffer leaves are copied into scratch and summed by the array kernel
+        private static double pairwiseSum(DoubleBuffer prices, int fromIndex, int toIndex, double[] scratch) {
+            if (toIndex - fromIndex <= BLOCK_SIZE) {
+                prices.get(fromIndex, scratch, 0, toIndex - fromIndex);
+                return blockSum(scratch, 0, toIndex - fromIndex);
+            }
+            int mid = split(fromIndex, toIndex);
+            return pairwiseSum(prices, fromIndex, mid, scratch) + pairwiseSum(prices, mid, toIndex, scratch);
+        }
+
+        private static double blockMax(DoubleBuffer prices, int fromIndex, int toIndex, double[] scratch) {
+            double max = Double.NEGATIVE_INFINITY;
+            for (int from = fromIndex; from < toIndex; from += BLOCK_SIZE) {
+                int length = Math.min(BLOCK_SIZE, toIndex - from);
+                prices.get(from, scratch, 0, length);
+                max = Math.max(max, blockMax(scratch, 0, length));
+            }
+            return max;
+        }
+
+        private static double blockSum(double[] prices, int fromIndex, int toIndex) {
+            double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            int i = fromIndex;
+            for (; i + 3 < toIndex; i += 4) {
+                s0 += prices[i];
+                s1 += prices[i + 1];
+                s2 += prices[i + 2];
+                s3 += prices[i + 3];
+            }
+            for (; i < toIndex; i++) {
+                s0 += prices[i];
+            }
+            return (s0 + s1) + (s2 + s3);
+        }
+
+        private static double blockMax(double[] prices, int fromIndex, int toIndex) {
+            double m0 = Double.NEGATIVE_INFINITY, m1 = m0, m2 = m0, m3 = m0;
+            int i = fromIndex;
+            for (; i + 3 < toIndex; i += 4) {
+                if (prices[i] > m0) m0 = prices[i];
+                if (prices[i + 1] > m1) m1 = prices[i + 1];
+                if (prices[i + 2] > m2) m2 = prices[i + 2];
+                if (prices[i + 3] > m3) m3 = prices[i + 3];
+            }
+            for (; i < toIndex; i++) {
+                if (prices[i] > m0) m0 = prices[i];
+            }
+            return Math.max(Math.max(m0, m1), Math.max(m2, m3));
+        }
+
+        /**
+         * Fork-join task that follows the same pairwise tree as pairwiseSum
+         */
+        private static class SumTask extends RecursiveTask<Double> {
+            private static final long serialVersionUID = 1L;
+            private final double[] prices;          // Exactly one of prices and buffer is set
+            private final transient DoubleBuffer buffer;
+            private final int fromIndex;
+            private final int toIndex;
+
+            SumTask(double[] prices, int fromIndex, int toIndex) {
+                this(prices, null, fromIndex, toIndex);
+            }
+
+            SumTask(DoubleBuffer buffer, int fromIndex, int toIndex) {
+                this(null, buffer, fromIndex, toIndex);
+            }
+
+            private SumTask(double[] prices, DoubleBuffer buffer, int fromIndex, int toIndex) {
+                this.prices = prices;
+                this.buffer = buffer;
+                this.fromIndex = fromIndex;
+                this.toIndex = toIndex;
+            }
+
+            @Override
+            protected Double compute() {
+                if (toIndex - fromIndex <= PARALLEL_GRAIN) {
+                    return prices != null
+                        ? pairwiseSum(prices, fromIndex, toIndex)
+                        : pairwiseSum(buffer, fromIndex, toIndex, new double[BLOCK_SIZE]);
+                }
+                int mid = split(fromIndex, toIndex);
+                SumTask left = new SumTask(prices, buffer, fromIndex, mid);
+                left.fork();
+                double right = new SumTask(prices, buffer, mid, toIndex).compute();
+                return left.join() + right;
+            }
+        }
+
+        /**
+         * Fork-join task for the maximum; max is exact, so any split works
+         */
+        private static class MaxTask extends RecursiveTask<Double> {
+            private static final long serialVersionUID = 1L;
+            private final double[] prices;          // Exactly one of prices and buffer is set
+            private final transient DoubleBuffer buffer;
+            private final int fromIndex;
+            private final int toIndex;
+
+            MaxTask(double[] prices, int fromIndex, int toIndex) {
+                this(prices, null, fromIndex, toIndex);
+            }
+
+            MaxTask(DoubleBuffer buffer, int fromIndex, int toIndex) {
+                this(null, buffer, fromIndex, toIndex);
+            }
+
+            private MaxTask(double[] prices, DoubleBuffer buffer, int fromIndex, int toIndex) {
+                this.prices = prices;
+                this.buffer = buffer;
+                this.fromIndex = fromIndex;
+                this.toIndex = toIndex;
+            }
+
+            @Override
+            protected Double compute() {
+                if (toIndex - fromIndex <= PARALLEL_GRAIN) {
+                    return prices != null
+                        ? blockMax(prices, fromIndex, toIndex)
+                        : blockMax(buffer, fromIndex, toIndex, new double[BLOCK_SIZE]);
+                }
+                int mid = split(fromIndex, toIndex);
+                MaxTask left = new MaxTask(prices, buffer, fromIndex, mid);
+                left.fork();
+                double right = new MaxTask(prices, buffer, mid, toIndex).compute();
+                return Math.max(left.join(), right);
+            }
+        }
+    }
+
+    /**
+     * PriceStore - Multi-symbol time-series store with off-heap columns
+     * Each symbol owns a timestamp column and a price column held in direct
+     * (native, off-heap) buffers, so millions of ticks add nothing to the heap
+     * the garbage collector has to trace. Columns are append-only and hand out
+     * zero-copy read-only views that the analysis methods accept directly.
+     */
+    static class PriceStore {
+        private final Map<String, SeriesColumn> series = new ConcurrentHashMap<>();
+
+        /**
+         * Returns the column for a symbol, creating an empty one if needed
+         * @param symbol Ticker symbol
+         * @return SeriesColumn The symbol's column
+         */
+        public SeriesColumn series(String symbol) {
+            if (symbol == null || symbol.trim().isEmpty()) {
+                throw new IllegalArgumentException("Symbol cannot be empty");
+            }
+            return series.computeIfAbsent(symbol.trim(), key -> new SeriesColumn());
+        }
+
+        /**
+         * @return SeriesColumn The symbol's column, or null if it was never added
+         */
+        public SeriesColumn get(String symbol) {
+            return symbol == null ? null : series.get(symbol.trim());
+        }
+
+        /**
+         * Appends one tick to a symbol's column
+         * @param symbol Ticker symbol
+         * @param timestamp Tick time, e.g. epoch milliseconds
+         * @param price Tick price
+         */
+        public void append(String symbol, long timestamp, double price) {
+            series(symbol).append(timestamp, price);
+        }
+
+        /**
+         * Drops a symbol; its native memory is released once no views remain
+         * @return boolean true if the symbol existed
+         */
+        public boolean remove(String symbol) {
+            return symbol != null && series.remove(symbol.trim()) != null;
+        }
+
+        /**
+         * @return Set<String> Read-only view of the stored symbols
+         */
+        public Set<String> symbols() {
+            return Collections.unmodifiableSet(series.keySet());
+        }
+
+        /**
+         * SeriesColumn - Append-only timestamp and price columns for one symbol
+         * Appends are serialized per column; reads and views never block.
+         * Timestamps must not decrease.
+         */
+        static class SeriesColumn {
+            private static final int INITIAL_CAPACITY = 1024;
+
+            private volatile ByteBuffer timestamps;  // Direct buffer of longs
+            private volatile ByteBuffer prices;      // Direct buffer of doubles
+            private volatile int size;
+
+            SeriesColumn() {
+                timestamps = allocate(INITIAL_CAPACITY * Long.BYTES);
+                prices = allocate(INITIAL_CAPACITY * Double.BYTES);
+            }
+
+            /**
+             * Appends one tick, doubling the native buffers when they are full
+             * @throws IllegalArgumentException if the timestamp is earlier than the last one
+             */
+            public synchronized void append(long timestamp, double price) {
+                int n = size;
+                if (n > 0 && timestamp < timestamps.getLong((n - 1) * Long.BYTES)) {
+                    throw new IllegalArgumentException("Timestamps must not decrease");
+                }
+                if ((long) (n + 1) * Double.BYTES > prices.capacity()) {
+                    if (n >= Integer.MAX_VALUE / Double.BYTES / 2) {
+                        throw new IllegalStateException("Column is full");
+                    }
+                    // Existing views keep pointing at the old buffers, whose data stays valid
+                    timestamps = copyInto(timestamps, allocate(timestamps.capacity() * 2), n * Long.BYTES);
+                    prices = copyInto(prices, allocate(prices.capacity() * 2), n * Double.BYTES);
+                }
+                timestamps.putLong(n * Long.BYTES, timestamp);
+                prices.putDouble(n * Double.BYTES, price);
+                size = n + 1;  // Publish only after both columns are written
+            }
+
+            /**
+             * @return int Number of ticks in the column
+             */
+            public int size() {
+                return size;
+            }
+
+            public double priceAt(int index) {
+                Objects.checkIndex(index, size);
+                return prices.getDouble(index * Double.BYTES);
+            }
+
+            public long timestampAt(int index) {
+                Objects.checkIndex(index, size);
+                return timestamps.getLong(index * Long.BYTES);
+            }
+
+            /**
+             * Zero-copy read-only view of prices[fromIndex .. toIndex)
+             * @throws IndexOutOfBoundsException if the range is invalid
+             */
+            public DoubleBuffer priceSlice(int fromIndex, int toIndex) {
+                int n = size;  // Size first: a buffer read after it always holds that many ticks
+                ByteBuffer view = slice(prices, n, fromIndex, toIndex, Double.BYTES);
+                return view.asDoubleBuffer();
+            }
+
+            /**
+             * Zero-copy read-only view of timestamps[fromIndex .. toIndex)
+             * @throws IndexOutOfBoundsException if the range is invalid
+             */
+            public LongBuffer timestampSlice(int fromIndex, int toIndex) {
+                int n = size;
+                ByteBuffer view = slice(timestamps, n, fromIndex, toIndex, Long.BYTES);
+                return view.asLongBuffer();
+            }
+
+            /**
+             * @return DoubleBuffer Zero-copy read-only view of every price appended so far
+             */
+            public DoubleBuffer prices() {
+                return priceSlice(0, size);
+            }
+
+            // column must be read after n; append publishes a grown buffer before the larger size
+            private static ByteBuffer slice(ByteBuffer column, int n, int fromIndex, int toIndex, int width) {
+                Objects.checkFromToIndex(fromIndex, toIndex, n);
+                ByteBuffer view = column.asReadOnlyBuffer();
+                view.limit(toIndex * width).position(fromIndex * width);
+                return view.slice().order(ByteOrder.nativeOrder());
+            }
+
+            private static ByteBuffer allocate(int bytes) {
+                return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+            }
+
+            private static ByteBuffer copyInto(ByteBuffer from, ByteBuffer to, int bytes) {
+                ByteBuffer source = from.duplicate();
+                source.position(0).limit(bytes);
+                to.put(source).clear();
+                return to;
+            }
+        }
+    }
+
+    /**
+     * BenchmarkHarness - Throughput and allocation benchmarks for the analysis methods
+     * Runs each method over sizes 1e3, 1e4, ... up to a chosen maximum and over
+     * random, sorted and constant prices. Every measurement is preceded by warmup
+     * iterations and reports operations per second, nanoseconds per operation,
+     * bytes allocated per operation, the resulting allocation rate and the number
+     * of garbage collections, so later changes to the analyzer have a baseline.
+     * The double-based methods and their FixedPointPrices counterparts run
+     * side by side on the same data so the two representations can be compared.
+     * Run with "java w4a --bench [maxSize]"; sizes of 1e8 need roughly 2 GB of heap.
+     */
+    static class BenchmarkHarness {
+        static final int DEFAULT_MAX_SIZE = 10_000_000;
+        private static final int MAX_INPUT_SIZE = 1_000_000;     // Text input benchmarks stop here
+        private static final int WARMUP_ITERATIONS = 3;
+        private static final int MEASURED_ITERATIONS = 5;
+        private static final long MIN_ITERATION_NANOS = 100_000_000L;
+        private static final String[] DISTRIBUTIONS = {"random", "sorted", "constant"};
+
+        // Results are written here so the JIT cannot discard the benchmarked work
+        private static volatile double sink;
+
+        /**
+         * One benchmarked operation over a prepared data set
+         */
+        interface Workload {
+            double run(double[] prices);
+        }
+
+        /**
+         * Runs every benchmark and prints one result line per method, distribution and size
+         * @param maxSize Largest data size to use
+         */
+        public static void runAll(int maxSize) {
+            System.out.printf("%-28s %-9s %10s %14s %14s %12s %10s %5s%n",
+                "Benchmark", "Data", "Size", "ops/s", "ns/op", "B/op", "MB/s", "GCs");
+            for (String distribution : DISTRIBUTIONS) {
+                for (long size = 1000; size <= maxSize; size *= 10) {
+                    double[] prices = generate(distribution, (int) size);
+                    double target = prices[prices.length / 2];
+                    benchmark("calculateAveragePrice", distribution, prices, w4a::calculateAveragePrice);
+                    benchmark("findMaximumPrice", distribution, prices, w4a::findMaximumPrice);
+                    benchmark("countOccurrences", distribution, prices, p -> countOccurrences(p, target));
+                    benchmark("computeCumulativeSum", distribution, prices, p -> computeCumulativeSum(p).size());
+
+                    // Same operations on the fixed-point representation (two decimal places)
+                    FixedPointPrices fixed = FixedPointPrices.fromDoubles(prices, 2);
+                    long fixedTarget = fixed.toUnits(target);
+                    benchmark("fixed.average", distribution, prices, p -> fixed.average());
+                    benchmark("fixed.max", distribution, prices, p -> fixed.max());
+                    benchmark("fixed.count", distribution, prices, p -> fixed.count(fixedTarget));
+                    benchmark("fixed.cumulativeSum", distribution, prices, p -> fixed.cumulativeSum().length);
+
+                    if (size <= MAX_INPUT_SIZE) {
+                        byte[] text = toText(prices, "");
+                        // getStockPrices keeps reading until it sees a non-number
+                        byte[] typed = toText(prices, "done\n");
+                        benchmark("getStockPrices", distribution, prices, p -> runGetStockPrices(typed));
+                        benchmark("PriceLoader.load", distribution, prices, p -> runPriceLoader(text));
+                        benchmark("FixedPointPrices.load", distribution, prices, p -> runFixedLoader(text));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Warms up, measures and prints one workload
+         */
+        static void benchmark(String name, String distribution, double[] prices, Workload workload) {
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                runFor(workload, prices, MIN_ITERATION_NANOS);
+            }
+
+            com.sun.management.ThreadMXBean threads = allocationCounter();
+            long threadId = Thread.currentThread().getId();
+            long allocatedBefore = threads == null ? 0 : threads.getThreadAllocatedBytes(threadId);
+            long gcBefore = gcCount();
+            long operations = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+                operations += runFor(workload, prices, MIN_ITERATION_NANOS);
+            }
+            long elapsed = System.nanoTime() - start;
+            long allocated = threads == null ? -1 : threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            long gcs = gcCount() - gcBefore;
+
+            double opsPerSecond = operations * 1e9 / elapsed;
+            double bytesPerOp = allocated < 0 ? Double.NaN : (double) allocated / operations;
+            System.out.printf("%-28s %-9s %10d %14.1f %14.1f %12.1f %10.1f %5d%n",
+                name, distribution, prices.length, opsPerSecond, (double) elapsed / operations,
+                bytesPerOp, bytesPerOp * opsPerSecond / (1 << 20), gcs);
+        }
+
+        // Repeats the workload until at least minNanos have passed; returns the repetitions
+        private static long runFor(Workload workload, double[] prices, long minNanos) {
+            long operations = 0;
+            long deadline = System.nanoTime() + minNanos;
+            double result = 0;
+            do {
+                result += workload.run(prices);
+                operations++;
+            } while (System.nanoTime() < deadline);
+            sink = result;
+            return operations;
+        }
+
+        /**
+         * Generates prices with the given distribution
+         * @param distribution "random", "sorted" or "constant"
+         * @param size Number of prices
+         */
+        static double[] generate(String distribution, int size) {
+            Random random = new Random(42);
+            double[] prices = new double[size];
+            for (int i = 0; i < size; i++) {
+                prices[i] = Math.round(random.nextDouble() * 50_000) / 100.0;
+            }
+            if (distribution.equals("sorted")) {
+                Arrays.sort(prices);
+            } else if (distribution.equals("constant")) {
+                Arrays.fill(prices, 123.45);
+            }
+            return prices;
+        }
+
+        private static byte[] toText(double[] prices, String terminator) {
+            StringBuilder text = new StringBuilder(prices.length * 8);
+            for (double price : prices) {
+                text.append(price).append('\n');
+            }
+            return text.append(terminator).toString().getBytes(StandardCharsets.US_ASCII);
+        }
+
+        // Feeds the text through the interactive reader with its prompts discarded
+        private static double runGetStockPrices(byte[] text) {
+            Scanner original = scanner;
+            PrintStream console = System.out;
+            scanner = new Scanner(new ByteArrayInputStream(text));
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            try {
+                return getStockPrices().length;
+            } finally {
+                System.setOut(console);
+                scanner = original;
+            }
+        }
+
+        private static double runPriceLoader(byte[] text) {
+            try {
+                return PriceLoader.loadStream(new ByteArrayInputStream(text)).getPrices().length;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static double runFixedLoader(byte[] text) {
+            try {
+                return FixedPointPrices.load(Channels.newChannel(new ByteArrayInputStream(text)), 2).size();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static com.sun.management.ThreadMXBean allocationCounter() {
+            java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+                if (counter.isThreadAllocatedMemorySupported()) {
+                    counter.setThreadAllocatedMemoryEnabled(true);
+                    return counter;
+                }
+            }
+            return null;
+        }
+
+        private static long gcCount() {
+            long count = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, collector.getCollectionCount());
+            }
+            return count;
+        }
+    }
+
+    /**
+     * SelfCheck - Randomized checks of the indexes and kernels against plain scans
+     * Run with "java w4a --check". Every check uses a fixed seed, so a failure
+     * can be reproduced; one line is printed per check and the exit status is 1
+     * if any of them failed.
+     */
+    static class SelfCheck {
+        private static final long SEED = 42;
+
+        /**
+         * One self-contained check; throws AssertionError (or anything else) on failure
+         */
+        interface Check {
+            void run() throws Exception;
+        }
+
+        /**
+         * Runs every check and prints the outcome of each
+         * @return boolean true if all checks passed
+         */
+        public static boolean runAll() {
+            int failures = 0;
+            failures += run("range max/min", SelfCheck::checkRangeExtremes);
+            failures += run("frequency counts", SelfCheck::checkFrequencyCounts);
+            failures += run("off-heap store views", SelfCheck::checkPriceStore);
+            failures += run("segment file round trip", SelfCheck::checkSegmentFile);
+            failures += run("fixed-point rounding", SelfCheck::checkFixedPoint);
+            failures += run("correlation matrix", SelfCheck::checkCorrelation);
+            failures += run("pipeline windows", SelfCheck::checkPipelineWindows);
+            System.out.println(failures == 0 ? "All checks passed." : failures + " check(s) failed.");
+            return failures == 0;
+        }
+
+        private static int run(String name, Check check) {
+            try {
+                check.run();
+                System.out.println("ok      " + name);
+                return 0;
+            } catch (Exception | AssertionError e) {
+                System.out.println("FAILED  " + name + ": " + e);
+                return 1;
+            }
+        }
+
+        private static void expect(boolean condition, String message) {
+            if (!condition) {
+                throw new AssertionError(message);
+            }
+        }
+
+        // Sparse table and segment tree against a linear scan, with many ties
+        static void checkRangeExtremes() {
+            Random random = new Random(SEED);
+            for (int round = 0; round < 200; round++) {
+                int n = 1 + random.nextInt(300);
+                double[] prices = new double[n];
+                AppendableExtremumTree tree = new AppendableExtremumTree();
+                for (int i = 0; i < n; i++) {
+                    prices[i] = random.nextInt(20);  // Few distinct prices, so ties are common
+                    tree.append(prices[i]);
+                    // Query the growing tree too, not only the finished one
+                    int to = 1 + random.nextInt(i + 1);
+                    int from = random.nextInt(to);
+                    expect(tree.rangeArgMax(from, to) == scanArgMax(prices, from, to), "growing tree max " + from + ":" + to);
+                }
+                RangeExtremumIndex index = new RangeExtremumIndex(prices);
+                for (int q = 0; q < 200; q++) {
+                    int to = 1 + random.nextInt(n);
+                    int from = random.nextInt(to);
+                    int argMax = scanArgMax(prices, from, to);
+                    int argMin = scanArgMin(prices, from, to);
+                    expect(index.rangeArgMax(from, to) == argMax, "sparse table max " + from + ":" + to);
+                    expect(index.rangeArgMin(from, to) == argMin, "sparse table min " + from + ":" + to);
+                    expect(tree.rangeArgMax(from, to) == argMax, "tree max " + from + ":" + to);
+                    expect(tree.rangeArgMin(from, to) == argMin, "tree min " + from + ":" + to);
+                }
+            }
+        }
+
+        // Batch counts against countOccurrences, with targets right at the epsilon edge
+        static void checkFrequencyCounts() {
+            Random random = new Random(SEED);
+            double[] prices = new double[5_000];
+            for (int i = 0; i < prices.length; i++) {
+                prices[i] = random.nextInt(500) / 100.0;
+            }
+            prices[7] = Double.NaN;
+            double[] targets = new double[2_000];
+            for (int i = 0; i < targets.length; i++) {
+                double offset = (random.nextInt(5) - 2) * PRICE_EPSILON * 0.999;  // Within epsilon or just outside
+                targets[i] = random.nextInt(520) / 100.0 + offset;
+            }
+            targets[0] = Double.NaN;
+            targets[1] = Double.POSITIVE_INFINITY;
+
+            int[] counts = new FrequencyIndex(prices).countAll(targets);
+            for (int i = 0; i < targets.length; i++) {
+                expect(counts[i] == countOccurrences(prices, targets[i]), "count of " + targets[i]);
+            }
+        }
+
+        // Column views read while another thread appends and grows the buffers
+        static void checkPriceStore() throws InterruptedException {
+            PriceStore store = new PriceStore();
+            PriceStore.SeriesColumn column = store.series("CHECK");
+            int ticks = 200_000;
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < ticks; i++) {
+                    column.append(i, i);  // Price i at time i, so any prefix has a known sum
+                }
+            });
+            writer.start();
+            int views = 0;
+            while (writer.isAlive() || views == 0) {
+                DoubleBuffer prices = column.prices();
+                long n = prices.remaining();
+                // Whole-number prices sum exactly, so the view must hold exactly ticks 0 .. n-1
+                expect(AggregationKernels.sum(prices, 0, (int) n) == n * (n - 1) / 2.0, "prefix sum of " + n + " prices");
+                if (n > 0) {
+                    expect(findMaximumPrice(prices) == n - 1, "maximum of " + n + " prices");
+                    LongBuffer times = column.timestampSlice((int) n - 1, (int) n);
+                    expect(times.get(0) == n - 1, "timestamp " + (n - 1));
+                }
+                views++;
+            }
+            writer.join();
+            expect(column.size() == ticks, "final size " + column.size());
+        }
+
+        // Write, read back whole and by timestamp range, then detect a flipped byte
+        static void checkSegmentFile() throws IOException {
+            Random random = new Random(SEED);
+            int n = 3 * PriceSegmentFile.BLOCK_POINTS + 123;  // Several full blocks and a partial one
+            long[] timestamps = new long[n];
+            double[] prices = new double[n];
+            long time = 1_600_000_000_000L;
+            for (int i = 0; i < n; i++) {
+                // Mostly regular steps with repeats and occasional large gaps
+                int kind = random.nextInt(10);
+                time += kind == 0 ? 0 : kind == 1 ? random.nextInt(1_000_000) : 1000;
+                timestamps[i] = time;
+                prices[i] = kind == 2 ? prices[Math.max(0, i - 1)]
+                    : kind == 3 ? random.nextDouble() * 1e6 - 5e5
+                    : Math.round(random.nextDouble() * 50_000) / 100.0;
+            }
+            prices[5] = Double.NaN;
+            prices[6] = -0.0;
+
+            Path file = Files.createTempFile("w4a-check", ".w4p");
+            try {
+                PriceSegmentFile.write(file, timestamps, prices);
+                try (PriceSegmentFile.Reader reader = PriceSegmentFile.Reader.open(file)) {
+                    expect(reader.getPointCount() == n, "point count " + reader.getPointCount());
+                    double[] all = reader.readAllPrices();
+                    for (int i = 0; i < n; i++) {
+                        expect(Double.doubleToRawLongBits(all[i]) == Double.doubleToRawLongBits(prices[i]), "price " + i);
+                    }
+
+                    PriceStore.SeriesColumn column = new PriceStore().series("CHECK");
+                    reader.readInto(column);
+                    expect(column.size() == n && column.timestampAt(n - 1) == timestamps[n - 1], "readInto");
+
+                    for (int q = 0; q < 100; q++) {
+                        long from = timestamps[random.nextInt(n)] + random.nextInt(3) - 1;
+                        long to = from + (long) (random.nextDouble() * (time - from + 10));
+                        PriceSegmentFile.Block block = reader.readRange(from, to);
+                        int count = 0;
+                        for (int i = 0; i < n; i++) {
+                            if (timestamps[i] >= from && timestamps[i] <= to) {
+                                expect(count < block.size() && block.getTimestamps()[count] == timestamps[i]
+                                    && Double.compare(block.getPrices()[count], prices[i]) == 0, "range tick " + i);
+                                count++;
+                            }
+                        }
+                        expect(count == block.size(), "range size " + from + ":" + to);
+                    }
+                }
+
+                // Flip one byte inside the first block; its checksum must catch it
+                byte[] bytes = Files.readAllBytes(file);
+                bytes[40] ^= 0x10;
+                Files.write(file, bytes);
+                try (PriceSegmentFile.Reader reader = PriceSegmentFile.Reader.open(file)) {
+                    reader.readBlock(0);
+                    throw new AssertionError("corrupt block was not detected");
+                } catch (IOException e) {
+                    expect(e.getMessage().startsWith("Checksum mismatch"), "unexpected error " + e.getMessage());
+                }
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        // Doubles and text must round to the same units, and sums must not wrap
+        static void checkFixedPoint() {
+            Random random = new Random(SEED);
+            for (int i = 0; i < 1_000_000; i++) {
+                int scale = random.nextInt(FixedPointPrices.MAX_SCALE + 1);
+                double price;
+                switch (i % 3) {
+                    case 0: price = random.nextInt(2_000_000) / 1000.0 - 1000; break;
+                    // Exact halves at the rounding digit, e.g. 1.005 at scale 2
+                    case 1: price = (random.nextInt(200_000) + 0.5) / Math.pow(10, scale) * (random.nextBoolean() ? 1 : -1); break;
+                    default: price = random.nextDouble() * 1e6; break;
+                }
+                long expected = new BigDecimal(Double.toString(price)).setScale(scale, RoundingMode.HALF_UP)
+                    .unscaledValue().longValueExact();
+                long fromDouble = FixedPointPrices.fromDoubles(new double[] {price}, scale).unitsAt(0);
+                byte[] text = Double.toString(price).getBytes(StandardCharsets.US_ASCII);
+                long fromText = FixedPointPrices.parseUnits(text, text.length, scale, 1);
+                expect(fromDouble == expected, "fromDoubles(" + price + ", " + scale + ") = " + fromDouble);
+                expect(fromText == expected, "parseUnits(" + price + ", " + scale + ") = " + fromText);
+            }
+
+            FixedPointPrices huge = FixedPointPrices.ofUnits(new long[] {Long.MAX_VALUE - 1, 2}, 2);
+            try {
+                huge.sum();
+                throw new AssertionError("sum overflow was not detected");
+            } catch (ArithmeticException expectedOverflow) {
+                // The wrap would have produced a large negative total
+            }
+            try {
+                huge.cumulativeSum();
+                throw new AssertionError("cumulative sum overflow was not detected");
+            } catch (ArithmeticException expectedOverflow) {
+                // As above
+            }
+        }
+
+        // Tiled fork-join matrix against the textbook O(days * k^2) formula
+        static void checkCorrelation() {
+            Random random = new Random(SEED);
+            int k = 70;       // More than two tiles of series
+            int days = 2_500; // More than two day chunks
+            double[][] series = new double[k][days];
+            for (int i = 0; i < k; i++) {
+                double price = 100;
+                for (int d = 0; d < days; d++) {
+                    // Shared market move plus a series-specific one, so correlations vary
+                    price += (d % 7 - 3) * (i % 5) * 0.1 + random.nextGaussian();
+                    series[i][d] = price;
+                }
+            }
+            CorrelationMatrix matrix = CorrelationMatrix.compute(series);
+
+            for (int i = 0; i < k; i++) {
+                for (int j = 0; j < k; j++) {
+                    double meanI = 0, meanJ = 0;
+                    for (int d = 0; d < days; d++) {
+                        meanI += series[i][d];
+                        meanJ += series[j][d];
+                    }
+                    meanI /= days;
+                    meanJ /= days;
+                    double cov = 0, varI = 0, varJ = 0;
+                    for (int d = 0; d < days; d++) {
+                        cov += (series[i][d] - meanI) * (series[j][d] - meanJ);
+                        varI += (series[i][d] - meanI) * (series[i][d] - meanI);
+                        varJ += (series[j][d] - meanJ) * (series[j][d] - meanJ);
+                    }
+                    double covariance = cov / (days - 1);
+                    double correlation = cov / Math.sqrt(varI * varJ);
+                    expect(Math.abs(matrix.getCovariance()[i][j] - covariance) <= 1e-9 * Math.max(1, Math.abs(covariance)),
+                        "covariance " + i + "," + j);
+                    expect(Math.abs(matrix.getCorrelation()[i][j] - correlation) <= 1e-9, "correlation " + i + "," + j);
+                }
+            }
+        }
+
+        // Window stages of the lazy pipeline against recomputing every window
+        static void checkPipelineWindows() {
+            Random random = new Random(SEED);
+            double[] prices = new double[3_000];
+            for (int i = 0; i < prices.length; i++) {
+                prices[i] = 50 + random.nextInt(10_000) / 100.0;
+            }
+            for (int size : new int[] {1, 2, 7, 20, 200}) {
+                double[] means = PriceSeries.of(prices).window(size).mean().toArray();
+                double[] maxima = PriceSeries.of(prices).window(size).max().toArray();
+                double[] minima = PriceSeries.of(prices).window(size).min().toArray();
+                double[] deviations = PriceSeries.of(prices).window(size).stdDev().toArray();
+                expect(means.length == prices.length - size + 1, "window count for size " + size);
+                long above = 0;
+                for (int w = 0; w < means.length; w++) {
+                    double sum = 0, max = prices[w], min = prices[w];
+                    for (int i = w; i < w + size; i++) {
+                        sum += prices[i];
+                        max = Math.max(max, prices[i]);
+                        min = Math.min(min, prices[i]);
+                    }
+                    double mean = sum / size;
+                    double squares = 0;
+                    for (int i = w; i < w + size; i++) {
+                        squares += (prices[i] - mean) * (prices[i] - mean);
+                    }
+                    expect(Math.abs(means[w] - mean) < 1e-9, "mean of window " + w + " size " + size);
+                    expect(maxima[w] == max && minima[w] == min, "max/min of window " + w + " size " + size);
+                    // Compare variances: the running update leaves rounding residue near
+                    // zero that a square root would blow up to about 1e-6
+                    double variance = deviations[w] * deviations[w];
+                    expect(Math.abs(variance - squares / size) <= 1e-10 * mean * mean, "stddev of window " + w + " size " + size);
+                    if (mean > 100) {
+                        above++;
+                    }
+                }
+                long fused = PriceSeries.of(prices).window(size).mean().filter(mean -> mean > 100).count();
+                expect(fused == above, "fused count for size " + size);
+            }
+        }
+
+        // Earliest index of the maximum, as the indexes resolve ties
+        private static int scanArgMax(double[] prices, int from, int to) {
+            int best = from;
+            for (int i = from + 1; i < to; i++) {
+                if (prices[i] > prices[best]) {
+                    best = i;
+                }
+            }
+            return best;
+        }
+
+        private static int scanArgMin(double[] prices, int from, int to) {
+            int best = from;
+            for (int i = from + 1; i < to; i++) {
+                if (prices[i] < prices[best]) {
+                    best = i;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * PriceSegmentFile - Compressed binary on-disk format for price series
+     * Layout: header, data blocks, block index, footer. Each block holds up to
+     * BLOCK_POINTS ticks encoded Gorilla-style: timestamps as delta-of-delta
+     * bucket codes and prices as the XOR with the previous price, storing only
+     * its meaningful bits. The index records each block's offset, length, tick
+     * count, first/last timestamp and CRC32, so readers memory-map the file and
+     * decode (and checksum) only the blocks they actually touch.
+     */
+    static class PriceSegmentFile {
+        static final int MAGIC = 0x57344150;        // "W4AP"
+        static final int VERSION = 1;
+        static final int BLOCK_POINTS = 4096;       // Ticks per block
+        private static final int HEADER_BYTES = 8;  // magic + version
+        private static final int INDEX_ENTRY_BYTES = 36;
+        private static final int FOOTER_BYTES = 16; // index offset + block count + magic
+
+        /**
+         * Checks whether a file starts with the segment file magic number
+         * @param path File to inspect
+         * @return boolean true if the file looks like a segment file
+         */
+        public static boolean isSegmentFile(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(4);
+                while (header.hasRemaining() && channel.read(header) != -1) {
+                    // Keep reading until the magic number is complete or the file ends
+                }
+                return !header.hasRemaining() && header.getInt(0) == MAGIC;
+            }
+        }
+
+        /**
+         * Writes a whole series to a new segment file
+         * @param path File to create or replace
+         * @param timestamps Non-decreasing tick times
+         * @param prices Tick prices, same length as timestamps
+         */
+        public static void write(Path path, long[] timestamps, double[] prices) throws IOException {
+            if (timestamps.length != prices.length) {
+                throw new IllegalArgumentException("Timestamp and price counts differ");
+            }
+            try (Writer writer = new Writer(path)) {
+                for (int i = 0; i < prices.length; i++) {
+                    writer.append(timestamps[i], prices[i]);
+                }
+            }
+        }
+
+        /**
+         * Decoded contents of one block (or a range of ticks)
+         */
+        static class Block {
+            private final long[] timestamps;
+            private final double[] prices;
+
+            Block(long[] timestamps, double[] prices) {
+                this.timestamps = timestamps;
+                this.prices = prices;
+            }
+
+            // Getter methods for accessing private fields
+            public long[] getTimestamps() { return timestamps; }
+            public double[] getPrices() { return prices; }
+            public int size() { return prices.length; }
+        }
+
+        /**
+         * Writer - Appends ticks and writes a block each time BLOCK_POINTS are buffered
+         * The index and footer are written by close()
+         */
+        static class Writer implements Closeable {
+            private final FileChannel channel;
+            private final long[] pendingTimestamps = new long[BLOCK_POINTS];
+            private final double[] pendingPrices = new double[BLOCK_POINTS];
+            private int pending;
+            private ByteBuffer index = ByteBuffer.allocate(64 * INDEX_ENTRY_BYTES);
+            private int blockCount;
+            private long lastTimestamp = Long.MIN_VALUE;
+            private boolean closed;
+
+            /**
+             * Creates (or truncates) the file and writes the header
+             */
+            public Writer(Path path) throws IOException {
+                channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION);
+                header.flip();
+                try {
+                    writeFully(header);
+                } catch (IOException | RuntimeException e) {
+                    channel.close();  // The caller never gets a writer to close
+                    throw e;
+                }
+            }
+
+            /**
+             * Appends one tick
+             * @throws IllegalArgumentException if the timestamp is earlier than the last one
+             */
+            public void append(long timestamp, double price) throws IOException {
+                if (closed) {
+                    throw new IllegalStateException("Writer is closed");
+                }
+                if (timestamp < lastTimestamp) {
+                    throw new IllegalArgumentException("Timestamps must not decrease");
+                }
+                lastTimestamp = timestamp;
+                pendingTimestamps[pending] = timestamp;
+                pendingPrices[pending] = price;
+                if (++pending == BLOCK_POINTS) {
+                    flushBlock();
+                }
+            }
+
+            private void flushBlock() throws IOException {
+                byte[] encoded = encodeBlock(pendingTimestamps, pendingPrices, pending);
+                CRC32 crc = new CRC32();
+                crc.update(encoded, 0, encoded.length);
+
+                if (index.remaining() < INDEX_ENTRY_BYTES) {
+                    ByteBuffer larger = ByteBuffer.allocate(index.capacity() * 2);
+                    index.flip();
+                    index = larger.put(index);
+                }
+                index.putLong(channel.position())
+                     .putInt(encoded.length)
+                     .putInt(pending)
+                     .putLong(pendingTimestamps[0])
+                     .putLong(pendingTimestamps[pending - 1])
+                     .putInt((int) crc.getValue());
+                writeFully(ByteBuffer.wrap(encoded));
+                blockCount++;
+                pending = 0;
+            }
+
+            /**
+             * Writes any partial block, the block index and the footer
+             */
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    if (pending > 0) {
+                        flushBlock();
+                    }
+                    long indexOffset = channel.position();
+                    index.flip();
+                    writeFully(index);
+                    ByteBuffer footer = ByteBuffer.allocate(FOOTER_BYTES)
+                        .putLong(indexOffset).putInt(blockCount).putInt(MAGIC);
+                    footer.flip();
+                    writeFully(footer);
+                    channel.force(true);
+                } finally {
+                    channel.close();
+                }
+            }
+
+            private void writeFully(ByteBuffer buffer) throws IOException {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+
+        /**
+         * Reader - Memory-maps a segment file and decodes blocks on demand
+         */
+        static class Reader implements Closeable {
+            private final FileChannel channel;
+            private final MappedByteBuffer mapping;  // Whole file, or null if it is too large to map at once
+            private final long[] offsets;
+            private final int[] lengths;
+            private final int[] counts;
+            private final long[] firstTimestamps;
+            private final long[] lastTimestamps;
+            private final int[] checksums;
+            private final long pointCount;
+
+            private Reader(FileChannel channel) throws IOException {
+                this.channel = channel;
+                long size = channel.size();
+                if (size < HEADER_BYTES + FOOTER_BYTES) {
+                    throw new IOException("File is too short to be a price segment");
+                }
+                mapping = size <= Integer.MAX_VALUE
+                    ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size)
+                    : null;
+
+                ByteBuffer header = region(0, HEADER_BYTES);
+                ByteBuffer footer = region(size - FOOTER_BYTES, FOOTER_BYTES);
+                if (header.getInt(0) != MAGIC || footer.getInt(12) != MAGIC) {
+                    throw new IOException("Not a price segment file");
+                }
+                if (header.getInt(4) != VERSION) {
+                    throw new IOException("Unsupported segment version " + header.getInt(4));
+                }
+                long indexOffset = footer.getLong(0);
+                int blockCount = footer.getInt(8);
+                if (blockCount < 0 || indexOffset < HEADER_BYTES
+                        || indexOffset + (long) blockCount * INDEX_ENTRY_BYTES != size - FOOTER_BYTES) {
+                    throw new IOException("Corrupt segment index");
+                }
+
+                offsets = new long[blockCount];
+                lengths = new int[blockCount];
+                counts = new int[blockCount];
+                firstTimestamps = new long[blockCount];
+                lastTimestamps = new long[blockCount];
+                checksums = new int[blockCount];
+                ByteBuffer index = region(indexOffset, blockCount * INDEX_ENTRY_BYTES);
+                long points = 0;
+                for (int b = 0; b < blockCount; b++) {
+                    offsets[b] = index.getLong();
+                    lengths[b] = index.getInt();
+                    counts[b] = index.getInt();
+                    firstTimestamps[b] = index.getLong();
+                    lastTimestamps[b] = index.getLong();
+                    checksums[b] = index.getInt();
+                    if (offsets[b] < HEADER_BYTES || lengths[b] < 0 || offsets[b] + lengths[b] > indexOffset
+                            || counts[b] < 1 || counts[b] > BLOCK_POINTS) {
+                        throw new IOException("Corrupt index entry for block " + b);
+                    }
+                    points += counts[b];
+                }
+                pointCount = points;
+            }
+
+            /**
+             * Opens and maps a segment file; only the index is read up front
+             * @throws IOException if the file cannot be read or is not a valid segment
+             */
+            public static Reader open(Path path) throws IOException {
+                FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+                try {
+                    return new Reader(channel);
+                } catch (IOException | RuntimeException e) {
+                    channel.close();
+                    throw e;
+                }
+            }
+
+            // Getter methods for the block index
+            public int getBlockCount() { return offsets.length; }
+            public long getPointCount() { return pointCount; }
+            public long getFirstTimestamp(int block) { return firstTimestamps[block]; }
+            public long getLastTimestamp(int block) { return lastTimestamps[block]; }
+
+            /**
+             * Verifies and decodes one block
+             * @throws IOException if the block's checksum does not match
+             */
+            public Block readBlock(int block) throws IOException {
+                Objects.checkIndex(block, offsets.length);
+                ByteBuffer data = region(offsets[block], lengths[block]);
+                CRC32 crc = new CRC32();
+                crc.update(data.duplicate());
+                if ((int) crc.getValue() != checksums[block]) {
+                    throw new IOException("Checksum mismatch in block " + block);
+                }
+                return decodeBlock(data, counts[block]);
+            }
+
+            /**
+             * Decodes only the blocks overlapping [fromTimestamp, toTimestamp]
+             * @return Block The ticks whose timestamps fall in the range
+             */
+            public Block readRange(long fromTimestamp, long toTimestamp) throws IOException {
+                // First block that can contain fromTimestamp
+                int lo = 0;
+                int hi = offsets.length;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (lastTimestamps[mid] < fromTimestamp) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+
+                long[] timestamps = new long[BLOCK_POINTS];
+                double[] prices = new double[BLOCK_POINTS];
+                int count = 0;
+                for (int b = lo; b < offsets.length && firstTimestamps[b] <= toTimestamp; b++) {
+                    Block block = readBlock(b);
+                    for (int i = 0; i < block.size(); i++) {
+                        long timestamp = block.timestamps[i];
+                        if (timestamp >= fromTimestamp && timestamp <= toTimestamp) {
+                            if (count == prices.length) {
+                                timestamps = Arrays.copyOf(timestamps, count * 2);
+                                prices = Arrays.copyOf(prices, count * 2);
+                            }
+                            timestamps[count] = timestamp;
+                            prices[count++] = block.prices[i];
+                        }
+                    }
+                }
+                return new Block(Arrays.copyOf(timestamps, count), Arrays.copyOf(prices, count));
+            }
+
+            /**
+             * Decodes every block into one price array
+             * @throws IOException if any block is corrupt
+             */
+            public double[] readAllPrices() throws IOException {
+                if (pointCount > Integer.MAX_VALUE - 8) {
+                    throw new IOException("Segment has too many prices for one array");
+                }
+                double[] prices = new double[(int) pointCount];
+                int position = 0;
+                for (int b = 0; b < offsets.length; b++) {
+                    double[] blockPrices = readBlock(b).prices;
+                    System.arraycopy(blockPrices, 0, prices, position, blockPrices.length);
+                    position += blockPrices.length;
+                }
+                return prices;
+            }
+
+            /**
+             * Appends every tick to an off-heap store column
+             * @throws IOException if any block is corrupt
+             */
+            public void readInto(PriceStore.SeriesColumn column) throws IOException {
+                for (int b = 0; b < offsets.length; b++) {
+                    Block block = readBlock(b);
+                    for (int i = 0; i < block.size(); i++) {
+                        column.append(block.timestamps[i], block.prices[i]);
+                    }
+                }
+            }
+
+            // A read-only view of [offset, offset + length), from the mapping when there is one
+            private ByteBuffer region(long offset, int length) throws IOException {
+                if (mapping != null) {
+                    ByteBuffer view = mapping.duplicate();
+                    view.position((int) offset).limit((int) offset + length);
+                    return view.slice();
+                }
+                return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        }
+
+        // Timestamp delta-of-delta buckets: prefix code, value bits and offset
+        private static final int[] DOD_BITS = {7, 9, 12};
+        private static final long[] DOD_OFFSETS = {63, 255, 2047};
+
+        static byte[] encodeBlock(long[] timestamps, double[] prices, int count) {
+            BitWriter out = new BitWriter();
+            out.write(timestamps[0], 64);
+            long previousBits = Double.doubleToRawLongBits(prices[0]);
+            out.write(previousBits, 64);
+
+            long previousTimestamp = timestamps[0];
+            long previousDelta = 0;
+            int previousLeading = -1;  // -1 until the first meaningful-bit window is written
+            int previousTrailing = 0;
+            for (int i = 1; i < count; i++) {
+                long delta = timestamps[i] - previousTimestamp;
+                long deltaOfDelta = delta - previousDelta;
+                previousTimestamp = timestamps[i];
+                previousDelta = delta;
+                if (deltaOfDelta == 0) {
+                    out.write(0, 1);
+                } else {
+                    int bucket = 0;
+                    while (bucket < DOD_BITS.length
+                            && (deltaOfDelta < -DOD_OFFSETS[bucket] || deltaOfDelta > DOD_OFFSETS[bucket] + 1)) {
+                        bucket++;
+                    }
+                    // Prefix is bucket + 1 one-bits followed by a zero, except the last bucket
+                    if (bucket < DOD_BITS.length) {
+                        out.write((1L << (bucket + 2)) - 2, bucket + 2);
+                        out.write(deltaOfDelta + DOD_OFFSETS[bucket], DOD_BITS[bucket]);
+                    } else {
+                        out.write(0b1111, 4);
+                        out.write(deltaOfDelta, 64);
+                    }
+                }
+
+                long bits = Double.doubleToRawLongBits(prices[i]);
+                long xor = bits ^ previousBits;
+                previousBits = bits;
+                if (xor == 0) {
+                    out.write(0, 1);
+                    continue;
+                }
+                int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                int trailing = Long.numberOfTrailingZeros(xor);
+                if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                    // Fits in the previous window: reuse it
+                    out.write(0b10, 2);
+                    out.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                } else {
+                    int meaningful = 64 - leading - trailing;
+                    out.write(0b11, 2);
+                    out.write(leading, 5);
+                    out.write(meaningful - 1, 6);
+                    out.write(xor >>> trailing, meaningful);
+                    previousLeading = leading;
+                    previousTrailing = trailing;
+                }
+            }
+            return out.toByteArray();
+        }
+
+        static Block decodeBlock(ByteBuffer data, int count) {
+            BitReader in = new BitReader(data);
+            long[] timestamps = new long[count];
+            double[] prices = new double[count];
+            timestamps[0] = in.read(64);
+            long previousBits = in.read(64);
+            prices[0] = Double.longBitsToDouble(previousBits);
+
+            long previousDelta = 0;
+            int previousLeading = 0;
+            int previousTrailing = 0;
+            for (int i = 1; i < count; i++) {
+                int ones = 0;
+                while (ones < 4 && in.read(1) == 1) {
+                    ones++;
+                }
+                long deltaOfDelta;
+                if (ones == 0) {
+                    deltaOfDelta = 0;
+                } else if (ones <= DOD_BITS.length) {
+                    deltaOfDelta = in.read(DOD_BITS[ones - 1]) - DOD_OFFSETS[ones - 1];
+                } else {
+                    deltaOfDelta = in.read(64);
+                }
+                previousDelta += deltaOfDelta;
+                timestamps[i] = timestamps[i - 1] + previousDelta;
+
+                if (in.read(1) == 1) {
+                    if (in.read(1) == 1) {
+                        previousLeading = (int) in.read(5);
+                        int meaningful = (int) in.read(6) + 1;
+                        previousTrailing = 64 - previousLeading - meaningful;
+                    }
+                    long xor = in.read(64 - previousLeading - previousTrailing) << previousTrailing;
+                    previousBits ^= xor;
+                }
+                prices[i] = Double.longBitsToDouble(previousBits);
+            }
+            return new Block(timestamps, prices);
+        }
+
+        /**
+         * Packs values most-significant bit first into a growable byte array
+         */
+        private static class BitWriter {
+            private byte[] bytes = new byte[1024];
+            private int length;     // Whole bytes written
+            private long pending;   // Bits not yet written, right-aligned
+            private int pendingBits;
+
+            // Writes the low 'bits' bits of value (1 to 64)
+            void write(long value, int bits) {
+                if (bits > 32) {
+                    write(value >>> 32, bits - 32);
+                    bits = 32;
+                }
+                pending = (pending << bits) | (value & ((1L << bits) - 1));
+                pendingBits += bits;
+                while (pendingBits >= 8) {
+                    pendingBits -= 8;
+                    if (length == bytes.length) {
+                        bytes = Arrays.copyOf(bytes, length * 2);
+                    }
+                    bytes[length++] = (byte) (pending >>> pendingBits);
+                }
+                pending &= (1L << pendingBits) - 1;
+            }
+
+            byte[] toByteArray() {
+                byte[] result = Arrays.copyOf(bytes, length + (pendingBits > 0 ? 1 : 0));
+                if (pendingBits > 0) {
+                    result[length] = (byte) (pending << (8 - pendingBits));
+                }
+                return result;
+            }
+        }
+
+        /**
+         * Reads values written by BitWriter from a buffer without copying it
+         */
+        private static class BitReader {
+            private final ByteBuffer data;
+            private long bitPosition;
+
+            BitReader(ByteBuffer data) {
+                this.data = data;
+            }
+
+            // Reads 'bits' bits (1 to 64) as an unsigned value
+            long read(int bits) {
+                long result = 0;
+                while (bits > 0) {
+                    int current = data.get((int) (bitPosition >>> 3)) & 0xFF;
+                    int available = 8 - (int) (bitPosition & 7);
+                    int take = Math.min(available, bits);
+                    int chunk = (current >>> (available - take)) & ((1 << take) - 1);
+                    result = (result << take) | chunk;
+                    bits -= take;
+                    bitPosition += take;
+                }
+                return result;
+            }
+        }
+    }
+
+    /**
+     * RollingAnalytics - Streaming indicators over appended ticks
+     * Keeps moving average, EMA, rolling max/min and rolling standard deviation
+     * for several window sizes at once, each updated in O(1) amortized time per
+     * tick. One shared ring buffer holds the most recent prices; max/min use
+     * monotonic deques of tick numbers into that ring.
+     */
+    static class RollingAnalytics {
+        // Windows recompute their sums from the ring after this many full turns to stop drift
+        private static final int RESYNC_PERIOD = 64;
+        // Rings are the next power of two above the window, so 2^30 is the largest that fits an int
+        static final int MAX_WINDOW_SIZE = 1 << 29;
+
+        private final double[] history;   // Most recent prices, indexed by tick & mask
+        private final int mask;
+        private final Window[] windows;
+        private long ticks;               // Number of ticks seen so far
+
+        /**
+         * Per-window state: running mean/variance, EMA and the two deques
+         */
+        private static class Window {
+            final int size;
+            final double alpha;           // EMA smoothing factor 2 / (size + 1)
+            double mean;
+            double m2;                    // Sum of squared deviations from mean
+            double ema;
+            final long[] maxDeque;        // Tick numbers with decreasing prices
+            final long[] minDeque;        // Tick numbers with increasing prices
+            final int dequeMask;
+            long maxHead, maxTail, minHead, minTail;
+
+            Window(int size) {
+                this.size = size;
+                this.alpha = 2.0 / (size + 1);
+                int capacity = Integer.highestOneBit(size) << 1;
+                this.maxDeque = new long[capacity];
+                this.minDeque = new long[capacity];
+                this.dequeMask = capacity - 1;
+            }
+        }
+
+        /**
+         * Creates an engine tracking the given window sizes
+         * @param windowSizes Number of ticks in each window
+         * @throws IllegalArgumentException if no sizes are given or a size is not positive
+         */
+        public RollingAnalytics(int... windowSizes) {
+            if (windowSizes.length == 0) {
+                throw new IllegalArgumentException("At least one window size is required");
+            }
+            int largest = 0;
+            windows = new Window[windowSizes.length];
+            for (int w = 0; w < windowSizes.length; w++) {
+                if (windowSizes[w] < 1 || windowSizes[w] > MAX_WINDOW_SIZE) {
+                    throw new IllegalArgumentException("Window size must be between 1 and " + MAX_WINDOW_SIZE);
+                }
+                windows[w] = new Window(windowSizes[w]);
+                largest = Math.max(largest, windowSizes[w]);
+            }
+            int capacity = Integer.highestOneBit(largest) << 1;
+            history = new double[capacity];
+            mask = capacity - 1;
+        }
+
+        /**
+         * Feeds the next tick to every window
+         * @param price The new price
+         * @throws IllegalArgumentException if the price is NaN or infinite
+         */
+        public void onTick(double price) {
+            if (!Double.isFinite(price)) {
+                throw new IllegalArgumentException("Tick price must be a finite number");
+            }
+            long tick = ticks++;
+            history[(int) (tick & mask)] = price;
+
+            for (Window window : windows) {
+                long count = Math.min(ticks, window.size);
+                if (ticks <= window.size) {
+                    // Window still filling: ordinary Welford update
+                    double delta = price - window.mean;
+                    window.mean += delta / count;
+                    window.m2 += delta * (price - window.mean);
+                } else {
+                    // Window full: replace the expired price in one step
+                    double expired = history[(int) ((tick - window.size) & mask)];
+                    double oldMean = window.mean;
+                    window.mean += (price - expired) / window.size;
+                    window.m2 += (price - expired) * (price - window.mean + expired - oldMean);
+                    if (window.m2 < 0) {
+                        window.m2 = 0;
+                    }
+                    if ((tick / window.size) % RESYNC_PERIOD == 0 && tick % window.size == 0) {
+                        resync(window, tick);
+                    }
+                }
+                window.ema = tick == 0 ? price : window.ema + window.alpha * (price - window.ema);
+
+                // Drop ticks that slid out of the window, then restore deque order
+                long oldest = tick - window.size + 1;
+                if (window.maxHead < window.maxTail && window.maxDeque[(int) (window.maxHead & window.dequeMask)] < oldest) {
+                    window.maxHead++;
+                }
+                while (window.maxHead < window.maxTail
+                        && priceAt(window.maxDeque[(int) ((window.maxTail - 1) & window.dequeMask)]) <= price) {
+                    window.maxTail--;
+                }
+                window.maxDeque[(int) (window.maxTail++ & window.dequeMask)] = tick;
+
+                if (window.minHead < window.minTail && window.minDeque[(int) (window.minHead & window.dequeMask)] < oldest) {
+                    window.minHead++;
+                }
+                while (window.minHead < window.minTail
+                        && priceAt(window.minDeque[(int) ((window.minTail - 1) & window.dequeMask)]) >= price) {
+                    window.minTail--;
+                }
+                window.minDeque[(int) (window.minTail++ & window.dequeMask)] = tick;
+            }
+        }
+
+        // Recompute mean and m2 exactly from the prices currently in the window
+        private void resync(Window window, long newestTick) {
+            double sum = 0;
+            for (long t = newestTick - window.size + 1; t <= newestTick; t++) {
+                sum += priceAt(t);
+            }
+            double mean = sum / window.size;
+            double m2 = 0;
+            for (long t = newestTick - window.size + 1; t <= newestTick; t++) {
+                double deviation = priceAt(t) - mean;
+                m2 += deviation * deviation;
+            }
+            window.mean = mean;
+            window.m2 = m2;
+        }
+
+        private double priceAt(long tick) {
+            return history[(int) (tick & mask)];
+        }
+
+        // Getter methods for the engine configuration
+        public long getTickCount() { return ticks; }
+        public int getWindowCount() { return windows.length; }
+        public int getWindowSize(int w) { return windows[w].size; }
+
+        /**
+         * @return boolean true once the window has received a full window of ticks
+         */
+        public boolean isReady(int w) {
+            return ticks >= windows[w].size;
+        }
+
+        /**
+         * @return double Simple moving average over the window (or the ticks so far)
+         */
+        public double movingAverage(int w) {
+            requireTicks();
+            return windows[w].mean;
+        }
+
+        /**
+         * @return double Exponential moving average with alpha = 2 / (size + 1)
+         */
+        public double ema(int w) {
+            requireTicks();
+            return windows[w].ema;
+        }
+
+        /**
+         * @return double Highest price within the window
+         */
+        public double rollingMax(int w) {
+            requireTicks();
+            Window window = windows[w];
+            return priceAt(window.maxDeque[(int) (window.maxHead & window.dequeMask)]);
+        }
+
+        /**
+         * @return double Lowest price within the window
+         */
+        public double rollingMin(int w) {
+            requireTicks();
+            Window window = windows[w];
+            return priceAt(window.minDeque[(int) (window.minHead & window.dequeMask)]);
+        }
+
+        /**
+         * @return double Population standard deviation of the prices within the window
+         */
+        public double rollingStdDev(int w) {
+            requireTicks();
+            Window window = windows[w];
+            return Math.sqrt(window.m2 / Math.min(ticks, window.size));
+        }
+
+        private void requireTicks() {
+            if (ticks == 0) {
+                throw new IllegalStateException("No ticks received yet");
+            }
+        }
+    }
+
+    /**
+     * QuantileSketch - Mergeable streaming percentile estimates (KLL sketch)
+     * Keeps a few thousand sampled prices in levels of compactors: level h holds
+     * items that each stand for 2^h prices. When a level fills up it is sorted
+     * and every other item (starting at a random offset) moves up a level, so
+     * memory stays at a few kilobytes no matter how many prices are fed. Rank
+     * and quantile answers are within roughly 1.7 / k of the true rank with
+     * high probability. NaN prices are ignored.
+     */
+    static class QuantileSketch implements DoubleConsumer {
+        static final int DEFAULT_K = 200;
+        private static final int MIN_LEVEL_CAPACITY = 8;
+        private static final double CAPACITY_DECAY = 2.0 / 3.0;
+
+        private final int k;
+        private final Random random;
+        private double[][] levels = new double[1][];
+        private int[] sizes = new int[1];
+        private long count;
+        private double min = Double.NaN;
+        private double max = Double.NaN;
+
+        public QuantileSketch() {
+            this(DEFAULT_K);
+        }
+
+        /**
+         * @param k Accuracy parameter; larger values use more memory for smaller error
+         * @throws IllegalArgumentException if k is below 8
+         */
+        public QuantileSketch(int k) {
+            if (k < MIN_LEVEL_CAPACITY) {
+                throw new IllegalArgumentException("Sketch accuracy k must be at least " + MIN_LEVEL_CAPACITY);
+            }
+            this.k = k;
+            this.random = new Random();
+            levels[0] = new double[k];
+        }
+
+        /**
+         * Adds one price to the sketch
+         * @param price The price to add; NaN is ignored
+         */
+        @Override
+        public void accept(double price) {
+            if (Double.isNaN(price)) {
+                return;
+            }
+            if (count == 0 || price < min) {
+                min = price;
+            }
+            if (count == 0 || price > max) {
+                max = price;
+            }
+            count++;
+            append(0, price);
+            if (sizes[0] >= capacity(0)) {
+                compress();
+            }
+        }
+
+        /**
+         * Folds another sketch into this one; the other sketch is unchanged
+         * Merging a sketch into itself counts every price twice.
+         * @param other Sketch built over a different chunk of prices
+         */
+        public void merge(QuantileSketch other) {
+            if (other.count == 0) {
+                return;
+            }
+            // Read from copies of the level table and sizes: when other is this
+            // sketch, append grows them while the loop is still walking them
+            double[][] otherLevels = other.levels.clone();
+            int[] otherSizes = other.sizes.clone();
+            for (int h = 0; h < otherLevels.length; h++) {
+                for (int i = 0; i < otherSizes[h]; i++) {
+                    append(h, otherLevels[h][i]);
+                }
+            }
+            min = count == 0 ? other.min : Math.min(min, other.min);
+            max = count == 0 ? other.max : Math.max(max, other.max);
+            count += other.count;
+            compress();
+        }
+
+        /**
+         * @return long Number of prices fed into the sketch
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Estimates the fraction of prices less than or equal to the value
+         * @param value Price to rank
+         * @return double Normalized rank between 0 and 1
+         */
+        public double rank(double value) {
+            if (count == 0) {
+                return 0;
+            }
+            long weight = 0;
+            for (int h = 0; h < levels.length; h++) {
+                for (int i = 0; i < sizes[h]; i++) {
+                    if (levels[h][i] <= value) {
+                        weight += 1L << h;
+                    }
+                }
+            }
+            return (double) weight / count;
+        }
+
+        /**
+         * Estimates the price at the given fraction of the distribution
+         * @param fraction Between 0 and 1, e.g. 0.99 for the 99th percentile
+         * @return double Estimated price, exact at 0 (min) and 1 (max)
+         * @throws IllegalArgumentException if the fraction is outside [0, 1]
+         * @throws IllegalStateException if the sketch is empty
+         */
+        public double quantile(double fraction) {
+            return quantiles(new double[] {fraction})[0];
+        }
+
+        /**
+         * Estimates several quantiles with a single sort of the retained items
+         * @param fractions Fractions between 0 and 1, in any order
+         * @return double[] Estimated price for each fraction
+         */
+        public double[] quantiles(double[] fractions) {
+            if (count == 0) {
+                throw new IllegalStateException("Sketch is empty");
+            }
+            for (double fraction : fractions) {
+                if (!(fraction >= 0 && fraction <= 1)) {
+                    throw new IllegalArgumentException("Quantile fraction must be between 0 and 1");
+                }
+            }
+
+            // Pack (value, weight) pairs, sort by value and walk the cumulative weight
+            int retained = 0;
+            for (int size : sizes) {
+                retained += size;
+            }
+            double[] values = new double[retained];
+            long[] weights = new long[retained];
+            Integer[] order = new Integer[retained];
+            int n = 0;
+            for (int h = 0; h < levels.length; h++) {
+                for (int i = 0; i < sizes[h]; i++) {
+                    values[n] = levels[h][i];
+                    weights[n] = 1L << h;
+                    order[n] = n;
+                    n++;
+                }
+            }
+            Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+
+            double[] results = new double[fractions.length];
+            for (int q = 0; q < fractions.length; q++) {
+                if (fractions[q] == 0) {
+                    results[q] = min;
+                    continue;
+                }
+                if (fractions[q] == 1) {
+                    results[q] = max;
+                    continue;
+                }
+                double target = fractions[q] * count;
+                long cumulative = 0;
+                results[q] = max;
+                for (int index : order) {
+                    cumulative += weights[index];
+                    if (cumulative >= target) {
+                        results[q] = values[index];
+                        break;
+                    }
+                }
+            }
+            return results;
+        }
+
+        // Level capacities shrink geometrically below the top level
+        private int capacity(int level) {
+            int depth = levels.length - 1 - level;
+            return Math.max(MIN_LEVEL_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth)));
+        }
+
+        private void append(int level, double value) {
+            while (level >= levels.length) {
+                levels = Arrays.copyOf(levels, levels.length + 1);
+                sizes = Arrays.copyOf(sizes, sizes.length + 1);
+                levels[levels.length - 1] = new double[k];
+            }
+            if (sizes[level] == levels[level].length) {
+                levels[level] = Arrays.copyOf(levels[level], sizes[level] * 2);
+            }
+            levels[level][sizes[level]++] = value;
+        }
+
+        // Compact every level that is at or over capacity, lowest first
+        private void compress() {
+            for (int h = 0; h < levels.length; h++) {
+                if (sizes[h] < capacity(h)) {
+                    continue;
+                }
+                double[] level = levels[h];
+                int size = sizes[h];
+                Arrays.sort(level, 0, size);
+                // An odd item out stays behind so the total weight is preserved
+                int paired = size & ~1;
+                int offset = random.nextBoolean() ? 1 : 0;
+                for (int i = offset; i < paired; i += 2) {
+                    append(h + 1, level[i]);
+                }
+                if (paired < size) {
+                    level[0] = level[size - 1];
+                    sizes[h] = 1;
+                } else {
+                    sizes[h] = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * FixedPointPrices - Prices stored as scaled longs instead of doubles
+     * With scale 2 a price of $12.34 is stored as 1234. Sums, maxima, counts and
+     * cumulative sums are exact integer operations: equality needs no epsilon.
+     * The max and count loops are plain long arithmetic the JIT can vectorize;
+     * the overflow-checked sums are not, but stay simple scalar loops. Select this
+     * representation instead of double[] wherever prices have a fixed number of
+     * decimal places; both can be benchmarked with "java w4a --bench".
+     * Sums overflow only beyond about 9.2e18 units (9.2e16 dollars at scale 2);
+     * sum() and cumulativeSum() then throw ArithmeticException instead of wrapping.
+     * Doubles and parsed text are both rounded half up (away from zero) on their
+     * shortest decimal form, so 1.005 converts to the same units either way.
+     */
+    static class FixedPointPrices {
+        static final int MAX_SCALE = 9;
+        private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L,
+            100_000_000L, 1_000_000_000L
+        };
+
+        private final long[] units;  // Price * 10^scale, rounded half up
+        private final int scale;
+
+        private FixedPointPrices(long[] units, int scale) {
+            this.units = units;
+            this.scale = scale;
+        }
+
+        /**
+         * Wraps already scaled values
+         * @param units Prices multiplied by 10^scale
+         * @param scale Number of decimal places (0 to 9)
+         */
+        public static FixedPointPrices ofUnits(long[] units, int scale) {
+            checkScale(scale);
+            return new FixedPointPrices(units, scale);
+        }
+
+        /**
+         * Converts double prices, rounding each to the given number of decimals
+         * @param prices Array of stock prices
+         * @param scale Number of decimal places (0 to 9)
+         */
+        public static FixedPointPrices fromDoubles(double[] prices, int scale) {
+            checkScale(scale);
+            long[] units = new long[prices.length];
+            for (int i = 0; i < prices.length; i++) {
+                units[i] = toUnits(prices[i], scale);
+            }
+            return new FixedPointPrices(units, scale);
+        }
+
+        /**
+         * Parses a price file straight into scaled longs, without going through double
+         * @throws IOException if the file cannot be read
+         * @throws NumberFormatException if a value is not a valid number or out of range
+         */
+        public static FixedPointPrices loadFile(Path path, int scale) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return load(channel, scale);
+            }
+        }
+
+        /**
+         * Parses ASCII price text straight into scaled longs
+         * @param channel Source of price text, delimited like PriceLoader input
+         * @param scale Number of decimal places (0 to 9)
+         * @throws IOException if the channel cannot be read
+         * @throws NumberFormatException if a value is not a valid number or out of range
+         */
+        public static FixedPointPrices load(ReadableByteChannel channel, int scale) throws IOException {
+            checkScale(scale);
+            long[][] units = {new long[1024]};
+            int[] count = {0};
+            PriceLoader.streamTokens(channel, (token, length, line) -> {
+                if (count[0] == units[0].length) {
+                    if (count[0] == PriceLoader.MAX_ARRAY_LENGTH) {
+                        throw new IllegalStateException("Too many prices to hold in one array");
+                    }
+                    units[0] = Arrays.copyOf(units[0],
+                        (int) Math.min((long) count[0] * 2, PriceLoader.MAX_ARRAY_LENGTH));
+                }
+                units[0][count[0]++] = parseUnits(token, length, scale, line);
+            });
+            return new FixedPointPrices(Arrays.copyOf(units[0], count[0]), scale);
+        }
+
+        /**
+         * Parses one ASCII decimal into units of 10^-scale, rounding extra digits half up
+         * Exponents and other unusual forms go through BigDecimal
+         * @throws NumberFormatException if the text is not a valid number or out of range
+         */
+        static long parseUnits(byte[] token, int length, int scale, long line) {
+            int i = 0;
+            boolean negative = false;
+            if (token[0] == '-' || token[0] == '+') {
+                negative = token[0] == '-';
+                i++;
+            }
+
+            long value = 0;
+            int decimals = 0;
+            boolean sawDigit = false;
+            boolean sawPoint = false;
+            boolean roundUp = false;
+            try {
+                for (; i < length; i++) {
+                    int b = token[i];
+                    if (b >= '0' && b <= '9') {
+                        sawDigit = true;
+                        if (!sawPoint || decimals < scale) {
+                            value = Math.addExact(Math.multiplyExact(value, 10), b - '0');
+                            if (sawPoint) {
+                                decimals++;
+                            }
+                        } else if (decimals == scale) {
+                            roundUp = b >= '5';  // First dropped digit decides rounding
+                            decimals++;
+                        }
+                    } else if (b == '.' && !sawPoint) {
+                        sawPoint = true;
+                    } else {
+                        return parseSlow(token, length, scale, line);
+                    }
+                }
+                if (!sawDigit) {
+                    return parseSlow(token, length, scale, line);
+                }
+                // Pad missing decimals, e.g. "12.3" at scale 2 becomes 1230
+                for (int d = Math.min(decimals, scale); d < scale; d++) {
+                    value = Math.multiplyExact(value, 10);
+                }
+                if (roundUp) {
+                    value = Math.addExact(value, 1);
+                }
+            } catch (ArithmeticException e) {
+                throw new NumberFormatException("Price out of range on line " + line);
+            }
+            return negative ? -value : value;
+        }
+
+        private static long parseSlow(byte[] token, int length, int scale, long line) {
+            String text = new String(token, 0, length, StandardCharsets.US_ASCII);
+            try {
+                return new BigDecimal(text).setScale(scale, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+            } catch (NumberFormatException | ArithmeticException e) {
+                throw new NumberFormatException("Invalid price on line " + line + ": " + text);
+            }
+        }
+
+        private static void checkScale(int scale) {
+            if (scale < 0 || scale > MAX_SCALE) {
+                throw new IllegalArgumentException("Scale must be between 0 and " + MAX_SCALE);
+            }
+        }
+
+        private static long toUnits(double price, int scale) {
+            double scaled = price * POWERS_OF_TEN[scale];
+            if (!(Math.abs(scaled) < Long.MAX_VALUE)) {
+                throw new IllegalArgumentException("Price cannot be represented at scale " + scale + ": " + price);
+            }
+            // Well away from a half and small enough that the multiply error is
+            // negligible: the nearest integer is what HALF_UP would give
+            double nearest = Math.rint(scaled);
+            if (Math.abs(scaled) < 1e15 && Math.abs(scaled - nearest) < 0.25) {
+                return (long) nearest;
+            }
+            // Near a tie, round the decimal form the same way parseUnits does
+            return BigDecimal.valueOf(price).setScale(scale, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        }
+
+        // Getter methods for accessing private fields
+        public int size() { return units.length; }
+        public int getScale() { return scale; }
+        public long unitsAt(int index) { return units[index]; }
+
+        /**
+         * Converts a double price to this column's units, e.g. for count()
+         */
+        public long toUnits(double price) {
+            return toUnits(price, scale);
+        }
+
+        /**
+         * Converts a value in units back to a double price
+         */
+        public double toDouble(long value) {
+            return (double) value / POWERS_OF_TEN[scale];
+        }
+
+        /**
+         * Formats a value in units exactly, e.g. 1234 at scale 2 as "12.34"
+         */
+        public String format(long value) {
+            return BigDecimal.valueOf(value, scale).toPlainString();
+        }
+
+        /**
+         * @return long Exact sum of all prices, in units
+         * @throws ArithmeticException if the running total overflows a long
+         */
+        public long sum() {
+            long sum = 0;
+            for (long value : units) {
+                sum = Math.addExact(sum, value);
+            }
+            return sum;
+        }
+
+        /**
+         * @return double Average price in dollars, or 0 if there are no prices
+         */
+        public double average() {
+            return units.length == 0 ? 0 : toDouble(sum()) / units.length;
+        }
+
+        /**
+         * @return long Highest price in units
+         * @throws IllegalStateException if there are no prices
+         */
+        public long max() {
+            if (units.length == 0) {
+                throw new IllegalStateException("No prices");
+            }
+            long m0 = units[0], m1 = m0, m2 = m0, m3 = m0;
+            int i = 0;
+            for (; i + 3 < units.length; i += 4) {
+                m0 = Math.max(m0, units[i]);
+                m1 = Math.max(m1, units[i + 1]);
+                m2 = Math.max(m2, units[i + 2]);
+                m3 = Math.max(m3, units[i + 3]);
+            }
+            for (; i < units.length; i++) {
+                m0 = Math.max(m0, units[i]);
+            }
+            return Math.max(Math.max(m0, m1), Math.max(m2, m3));
+        }
+
+        /**
+         * Counts the prices exactly equal to the target
+         * @param target Price in units (see toUnits)
+         * @return int Number of matching prices
+         */
+        public int count(long target) {
+            int count = 0;
+            for (long value : units) {
+                if (value == target) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * @return long[] Running totals in units; element i is the sum of prices 0..i
+         * @throws ArithmeticException if a running total overflows a long
+         */
+        public long[] cumulativeSum() {
+            long[] sums = new long[units.length];
+            long sum = 0;
+            for (int i = 0; i < units.length; i++) {
+                sum = Math.addExact(sum, units[i]);
+                sums[i] = sum;
+            }
+            return sums;
+        }
+    }
+
+    /**
+     * CorrelationMatrix - Pairwise covariance and correlation across many price series
+     * Every series is centered once (mean and standard deviation are computed a
+     * single time per series). The N x N products are then split into square
+     * tiles of series, and each tile walks the days in cache-sized chunks so the
+     * rows it touches stay in cache. Tiles on and above the diagonal run as
+     * independent fork-join tasks; the lower triangle is mirrored.
+     * Uses sample (n - 1) statistics; a constant series has NaN correlations.
+     */
+    static class CorrelationMatrix {
+        private static final int TILE_SERIES = 32;   // Series per tile side
+        private static final int TILE_DAYS = 1024;   // Days per cache chunk
+
+        private final double[] means;
+        private final double[] standardDeviations;
+        private final double[][] covariance;
+        private final double[][] correlation;
+
+        private CorrelationMatrix(double[] means, double[] standardDeviations,
+                                  double[][] covariance, double[][] correlation) {
+            this.means = means;
+            this.standardDeviations = standardDeviations;
+            this.covariance = covariance;
+            this.correlation = correlation;
+        }
+
+        // Getter methods; the arrays are shared, not copied
+        public int size() { return means.length; }
+        public double[] getMeans() { return means; }
+        public double[] getStandardDeviations() { return standardDeviations; }
+        public double[][] getCovariance() { return covariance; }
+        public double[][] getCorrelation() { return correlation; }
+
+        /**
+         * Computes the matrices for the given symbols of a store
+         * @param store Store holding the aligned series
+         * @param symbols Symbols to include, in matrix order
+         * @throws IllegalArgumentException if a symbol is missing or lengths differ
+         */
+        public static CorrelationMatrix compute(PriceStore store, String... symbols) {
+            double[][] series = new double[symbols.length][];
+            for (int i = 0; i < symbols.length; i++) {
+                PriceStore.SeriesColumn column = store.get(symbols[i]);
+                if (column == null) {
+                    throw new IllegalArgumentException("Unknown symbol: " + symbols[i]);
+                }
+                DoubleBuffer view = column.prices();
+                series[i] = new double[view.remaining()];
+                view.get(series[i]);
+            }
+            return compute(series);
+        }
+
+        /**
+         * Computes the covariance and correlation of every pair of series
+         * @param series One price array per symbol, all the same length (at least 2)
+         * @throws IllegalArgumentException if the series are missing, too short or not aligned
+         */
+        public static CorrelationMatrix compute(double[][] series) {
+            int n = series.length;
+            if (n == 0) {
+                throw new IllegalArgumentException("At least one series is required");
+            }
+            int days = series[0].length;
+            if (days < 2) {
+                throw new IllegalArgumentException("Each series needs at least two prices");
+            }
+            for (double[] prices : series) {
+                if (prices.length != days) {
+                    throw new IllegalArgumentException("All series must have the same length");
+                }
+            }
+
+            // One pass per series for the mean, one for the centered copy and its spread
+            double[] means = new double[n];
+            double[] standardDeviations = new double[n];
+            double[][] centered = new double[n][];
+            ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute() {
+                    List<RecursiveAction> tasks = new ArrayList<>(n);
+                    for (int i = 0; i < n; i++) {
+                        int index = i;
+                        tasks.add(new RecursiveAction() {
+                            private static final long serialVersionUID = 1L;
+
+                            @Override
+                            protected void compute() {
+                                double[] prices = series[index];
+                                double mean = AggregationKernels.serialSum(prices, 0, days) / days;
+                                double[] deviations = new double[days];
+                                double squares = 0;
+                                for (int d = 0; d < days; d++) {
+                                    deviations[d] = prices[d] - mean;
+                                    squares += deviations[d] * deviations[d];
+                                }
+                                means[index] = mean;
+                                standardDeviations[index] = Math.sqrt(squares / (days - 1));
+                                centered[index] = deviations;
+                            }
+                        });
+                    }
+                    ForkJoinTask.invokeAll(tasks);
+                }
+            });
+
+            double[][] covariance = new double[n][n];
+            List<RecursiveAction> tiles = new ArrayList<>();
+            for (int rowStart = 0; rowStart < n; rowStart += TILE_SERIES) {
+                for (int columnStart = rowStart; columnStart < n; columnStart += TILE_SERIES) {
+                    tiles.add(new TileTask(centered, covariance, rowStart, columnStart, days));
+                }
+            }
+            ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute() {
+                    ForkJoinTask.invokeAll(tiles);
+                }
+            });
+
+            double[][] correlation = new double[n][n];
+            for (int i = 0; i < n; i++) {
+                for (int j = i; j < n; j++) {
+                    covariance[j][i] = covariance[i][j];
+                    double denominator = standardDeviations[i] * standardDeviations[j];
+                    double value = denominator == 0 ? Double.NaN : covariance[i][j] / denominator;
+                    correlation[i][j] = value;
+                    correlation[j][i] = value;
+                }
+            }
+            return new CorrelationMatrix(means, standardDeviations, covariance, correlation);
+        }
+
+        /**
+         * Fills one TILE_SERIES x TILE_SERIES block of the covariance matrix
+         */
+        private static class TileTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+            private final double[][] centered;
+            private final double[][] covariance;
+            private final int rowStart;
+            private final int columnStart;
+            private final int days;
+
+            TileTask(double[][] centered, double[][] covariance, int rowStart, int columnStart, int days) {
+                this.centered = centered;
+                this.covariance = covariance;
+                this.rowStart = rowStart;
+                this.columnStart = columnStart;
+                this.days = days;
+            }
+
+            @Override
+            protected void compute() {
+                int rowEnd = Math.min(rowStart + TILE_SERIES, centered.length);
+                int columnEnd = Math.min(columnStart + TILE_SERIES, centered.length);
+                double[][] sums = new double[rowEnd - rowStart][columnEnd - columnStart];
+
+                for (int dayStart = 0; dayStart < days; dayStart += TILE_DAYS) {
+                    int dayEnd = Math.min(dayStart + TILE_DAYS, days);
+                    for (int i = rowStart; i < rowEnd; i++) {
+                        double[] a = centered[i];
+                        // On diagonal tiles only the upper triangle is needed
+                        for (int j = Math.max(columnStart, i); j < columnEnd; j++) {
+                            sums[i - rowStart][j - columnStart] += dot(a, centered[j], dayStart, dayEnd);
+                        }
+                    }
+                }
+
+                for (int i = rowStart; i < rowEnd; i++) {
+                    for (int j = Math.max(columnStart, i); j < columnEnd; j++) {
+                        covariance[i][j] = sums[i - rowStart][j - columnStart] / (days - 1);
+                    }
+                }
+            }
+
+            private static double dot(double[] a, double[] b, int fromIndex, int toIndex) {
+                double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+                int d = fromIndex;
+                for (; d + 3 < toIndex; d += 4) {
+                    s0 += a[d] * b[d];
+                    s1 += a[d + 1] * b[d + 1];
+                    s2 += a[d + 2] * b[d + 2];
+                    s3 += a[d + 3] * b[d + 3];
+                }
+                for (; d < toIndex; d++) {
+                    s0 += a[d] * b[d];
+                }
+                return (s0 + s1) + (s2 + s3);
+            }
+        }
+    }
+
+    /**
+     * PriceSeries - Lazy, fused query pipeline over a price source
+     * Stages such as map, filter, cumulativeSum and window(n).mean() only
+     * describe the query; nothing runs until a terminal operation (count, sum,
+     * max, forEach, toArray, ...) is called. Each price is then pushed through
+     * every stage in turn, in a single pass with no intermediate arrays. Every
+     * terminal operation re-reads the source, so a pipeline can be reused.
+     * The menu options map directly onto it, for example:
+     *   average      PriceSeries.of(prices).average()
+     *   maximum      PriceSeries.of(prices).max()
+     *   occurrences  PriceSeries.of(prices).filter(p -> Math.abs(p - t) < PRICE_EPSILON).count()
+     *   cumulative   PriceSeries.of(prices).cumulativeSum().forEach(...)
+     */
+    static class PriceSeries {
+        // Pushes every value of this stage into the given downstream sink
+        private final Consumer<DoubleConsumer> source;
+
+        private PriceSeries(Consumer<DoubleConsumer> source) {
+            this.source = source;
+        }
+
+        /**
+         * @param prices Array of stock prices, read when a terminal operation runs
+         */
+        public static PriceSeries of(double[] prices) {
+            Objects.requireNonNull(prices, "prices");
+            return new PriceSeries(sink -> {
+                for (double price : prices) {
+                    sink.accept(price);
+                }
+            });
+        }
+
+        /**
+         * @param prices Column view (e.g. from PriceStore), read between position and limit
+         */
+        public static PriceSeries of(DoubleBuffer prices) {
+            Objects.requireNonNull(prices, "prices");
+            return new PriceSeries(sink -> {
+                for (int i = prices.position(); i < prices.limit(); i++) {
+                    sink.accept(prices.get(i));
+                }
+            });
+        }
+
+        /**
+         * Transforms every price
+         */
+        public PriceSeries map(DoubleUnaryOperator mapper) {
+            return new PriceSeries(sink -> source.accept(value -> sink.accept(mapper.applyAsDouble(value))));
+        }
+
+        /**
+         * Keeps only the prices that match the predicate
+         */
+        public PriceSeries filter(DoublePredicate predicate) {
+            return new PriceSeries(sink -> source.accept(value -> {
+                if (predicate.test(value)) {
+                    sink.accept(value);
+                }
+            }));
+        }
+
+        /**
+         * Replaces each price by the running total up to and including it
+         */
+        public PriceSeries cumulativeSum() {
+            return new PriceSeries(sink -> {
+                double[] sum = {0};
+                source.accept(value -> {
+                    sum[0] += value;
+                    sink.accept(sum[0]);
+                });
+            });
+        }
+
+        /**
+         * Starts a sliding-window stage over the last size prices
+         * @param size Number of prices per window
+         */
+        public Window window(int size) {
+            if (size < 1) {
+                throw new IllegalArgumentException("Window size must be at least 1");
+            }
+            return new Window(this, size);
+        }
+
+        /**
+         * Window - Chooses the indicator a sliding window emits
+         * Each indicator emits one value per price once the window is full,
+         * computed incrementally by a RollingAnalytics engine.
+         */
+        static class Window {
+            private final PriceSeries upstream;
+            private final int size;
+
+            private Window(PriceSeries upstream, int size) {
+                this.upstream = upstream;
+                this.size = size;
+            }
+
+            public PriceSeries mean() { return indicator(engine -> engine.movingAverage(0)); }
+            public PriceSeries max() { return indicator(engine -> engine.rollingMax(0)); }
+            public PriceSeries min() { return indicator(engine -> engine.rollingMin(0)); }
+            public PriceSeries stdDev() { return indicator(engine -> engine.rollingStdDev(0)); }
+
+            private PriceSeries indicator(ToDoubleFunction<RollingAnalytics> read) {
+                return new PriceSeries(sink -> {
+                    // A fresh engine per evaluation keeps repeated terminals independent
+                    RollingAnalytics engine = new RollingAnalytics(size);
+                    upstream.source.accept(value -> {
+                        engine.onTick(value);
+                        if (engine.isReady(0)) {
+                            sink.accept(read.applyAsDouble(engine));
+                        }
+                    });
+                });
+            }
+        }
+
+        /**
+         * Runs the pipeline, passing every resulting value to the action
+         */
+        public void forEach(DoubleConsumer action) {
+            source.accept(action);
+        }
+
+        /**
+         * @return long Number of values the pipeline produces
+         */
+        public long count() {
+            long[] count = {0};
+            source.accept(value -> count[0]++);
+            return count[0];
+        }
+
+        /**
+         * @return double Compensated sum of the values, 0 if there are none
+         */
+        public double sum() {
+            double[] state = {0, 0};  // running sum, compensation
+            source.accept(value -> {
+                double total = state[0] + value;
+                if (Math.abs(state[0]) >= Math.abs(value)) {
+                    state[1] += (state[0] - total) + value;
+                } else {
+                    state[1] += (value - total) + state[0];
+                }
+                state[0] = total;
+            });
+            return state[0] + state[1];
+        }
+
+        /**
+         * @return OptionalDouble Mean of the values, empty if there are none
+         */
+        public OptionalDouble average() {
+            PriceSummary summary = summary();
+            return summary.getCount() == 0 ? OptionalDouble.empty() : OptionalDouble.of(summary.getMean());
+        }
+
+        /**
+         * @return OptionalDouble Largest non-NaN value, empty if there is none
+         */
+        public OptionalDouble max() {
+            PriceSummary summary = summary();
+            return summary.getArgMax() < 0 ? OptionalDouble.empty() : OptionalDouble.of(summary.getMax());
+        }
+
+        /**
+         * @return OptionalDouble Smallest non-NaN value, empty if there is none
+         */
+        public OptionalDouble min() {
+            PriceSummary summary = summary();
+            return summary.getArgMin() < 0 ? OptionalDouble.empty() : OptionalDouble.of(summary.getMin());
+        }
+
+        /**
+         * Collects the values into a PriceSummary in one pass, without buffering them
+         * @return PriceSummary Statistics of the values the pipeline produces
+         */
+        public PriceSummary summary() {
+            double[] chunk = new double[1024];
+            int[] filled = {0};
+            PriceSummary[] summary = {PriceSummary.empty()};
+            source.accept(value -> {
+                chunk[filled[0]++] = value;
+                if (filled[0] == chunk.length) {
+                    summary[0] = summary[0].merge(PriceSummary.of(chunk, 0, filled[0]));
+                    filled[0] = 0;
+                }
+            });
+            return summary[0].merge(PriceSummary.of(chunk, 0, filled[0]));
+        }
+
+        /**
+         * @return double[] The values the pipeline produces
+         */
+        public double[] toArray() {
+            PriceLoader.PriceArrayBuilder builder = new PriceLoader.PriceArrayBuilder();
+            source.accept(builder);
+            return builder.toArray();
+        }
+    }
+
+    /**
+     * Backtester - Replays one price series against many strategies in parallel
+     * The prices and a PrefixSumIndex over them are built once and shared,
+     * read-only, by every worker thread, so a moving average of any length is
+     * an O(1) lookup and each strategy costs one pass over the days. Each
+     * strategy holds one unit long (1), flat (0) or short (-1) after every
+     * close; profit and drawdown are measured in price units.
+     */
+    static class Backtester {
+        private final PriceContext context;
+
+        /**
+         * @param prices Price series to replay; must not be modified while backtests run
+         */
+        public Backtester(double[] prices) {
+            this.context = new PriceContext(prices);
+        }
+
+        /**
+         * PriceContext - Shared read-only view of the series given to strategies
+         */
+        static class PriceContext {
+            private final double[] prices;
+            private final PrefixSumIndex sums;
+
+            PriceContext(double[] prices) {
+                this.prices = prices;
+                this.sums = new PrefixSumIndex(prices);
+            }
+
+            public int size() { return prices.length; }
+            public double priceAt(int day) { return prices[day]; }
+
+            /**
+             * @return double Average of the window prices ending at day (inclusive)
+             */
+            public double movingAverage(int day, int window) {
+                return sums.rangeAverage(day - window + 1, day + 1);
+            }
+        }
+
+        /**
+         * A trading rule evaluated at each day's close
+         */
+        interface Strategy {
+            String getName();
+
+            /**
+             * @return int Position to hold after the close of day: 1, 0 or -1
+             */
+            int position(PriceContext context, int day);
+        }
+
+        /**
+         * Long while the fast moving average is above the slow one, flat otherwise
+         */
+        static class MovingAverageCrossover implements Strategy {
+            private final int fast;
+            private final int slow;
+
+            public MovingAverageCrossover(int fast, int slow) {
+                if (fast < 1 || slow <= fast) {
+                    throw new IllegalArgumentException("Windows must satisfy 1 <= fast < slow");
+                }
+                this.fast = fast;
+                this.slow = slow;
+            }
+
+            @Override
+            public String getName() {
+                return "MA(" + fast + "/" + slow + ")";
+            }
+
+            @Override
+            public int position(PriceContext context, int day) {
+                if (day + 1 < slow) {
+                    return 0;  // Not enough history yet
+                }
+                return context.movingAverage(day, fast) > context.movingAverage(day, slow) ? 1 : 0;
+            }
+        }
+
+        /**
+         * Outcome of one strategy over the whole series
+         */
+        static class Result {
+            private final String name;
+            private final double profit;
+            private final double maxDrawdown;
+            private final int trades;
+
+            Result(String name, double profit, double maxDrawdown, int trades) {
+                this.name = name;
+                this.profit = profit;
+                this.maxDrawdown = maxDrawdown;
+                this.trades = trades;
+            }
+
+            // Getter methods for accessing private fields
+            public String getName() { return name; }
+            public double getProfit() { return profit; }
+            public double getMaxDrawdown() { return maxDrawdown; }
+            public int getTrades() { return trades; }
+        }
+
+        /**
+         * Builds every crossover with fast in [minFast, maxFast] and slow in [minSlow, maxSlow]
+         */
+        public static List<Strategy> movingAverageGrid(int minFast, int maxFast, int minSlow, int maxSlow) {
+            List<Strategy> strategies = new ArrayList<>();
+            for (int fast = minFast; fast <= maxFast; fast++) {
+                for (int slow = Math.max(minSlow, fast + 1); slow <= maxSlow; slow++) {
+                    strategies.add(new MovingAverageCrossover(fast, slow));
+                }
+            }
+            return strategies;
+        }
+
+        /**
+         * Evaluates every strategy, spread across the common fork-join pool
+         * @return List<Result> One result per strategy, in the same order
+         */
+        public List<Result> run(List<Strategy> strategies) {
+            return strategies.parallelStream()
+                .map(this::evaluate)
+                .collect(Collectors.toList());
+        }
+
+        /**
+         * Replays the series against one strategy on the calling thread
+         */
+        public Result evaluate(Strategy strategy) {
+            int days = context.size();
+            if (days == 0) {
+                return new Result(strategy.getName(), 0, 0, 0);
+            }
+
+            int position = strategy.position(context, 0);
+            int trades = position == 0 ? 0 : 1;
+            double profit = 0;
+            double peak = 0;
+            double maxDrawdown = 0;
+            for (int day = 1; day < days; day++) {
+                profit += position * (context.prices[day] - context.prices[day - 1]);
+                if (profit > peak) {
+                    peak = profit;
+                } else if (peak - profit > maxDrawdown) {
+                    maxDrawdown = peak - profit;
+                }
+                int next = strategy.position(context, day);
+                if (next != position) {
+                    trades++;
+                    position = next;
+                }
+            }
+            return new Result(strategy.getName(), profit, maxDrawdown, trades);
+        }
+    }
+
+    /**
+     * PriceSummary - Statistics of a run of prices gathered in one fused pass
+     * Holds count, sum, mean, variance, min/max with their positions and the
+     * first/last price. Summaries are immutable and mergeable: the summary of
+     * two consecutive chunks equals a.merge(b), so chunks summarized on
+     * different threads or read from different files need no rescan.
+     * Positions are counted from the first price summarized; NaN prices are
+     * ignored by min/max but included in the sum.
+     */
+    static class PriceSummary {
+        private static final PriceSummary EMPTY = new PriceSummary(0, 0, 0, 0, 0,
+            Double.NaN, Double.NaN, -1, -1, Double.NaN, Double.NaN);
+
+        private final long count;
+        private final double sum;           // Rounded sum of all prices
+        private final double compensation;  // Low-order bits lost from sum
+        private final double mean;
+        private final double m2;            // Sum of squared deviations from the mean
+        private final double min;
+        private final double max;
+        private final long argMin;
+        private final long argMax;
+        private final double first;
+        private final double last;
+
+        private PriceSummary(long count, double sum, double compensation, double mean, double m2,
+                             double min, double max, long argMin, long argMax,
+                             double first, double last) {
+            this.count = count;
+            this.sum = sum;
+            this.compensation = compensation;
+            this.mean = mean;
+            this.m2 = m2;
+            this.min = min;
+            this.max = max;
+            this.argMin = argMin;
+            this.argMax = argMax;
+            this.first = first;
+            this.last = last;
+        }
+
+        /**
+         * @return PriceSummary The summary of no prices, the identity for merge
+         */
+        public static PriceSummary empty() {
+            return EMPTY;
+        }
+
+        /**
+         * Summarizes the whole array in a single pass
+         * @param prices Array of stock prices; null is treated as empty
+         */
+        public static PriceSummary of(double[] prices) {
+            return prices == null ? EMPTY : of(prices, 0, prices.length);
+        }
+
+        /**
+         * Summarizes prices[fromIndex .. toIndex) in a single pass
+         * @throws IndexOutOfBoundsException if the range is invalid
+         */
+        public static PriceSummary of(double[] prices, int fromIndex, int toIndex) {
+            Objects.checkFromToIndex(fromIndex, toIndex, prices.length);
+            if (fromIndex == toIndex) {
+                return EMPTY;
+            }
+
+            // Squares are taken relative to the first finite price to keep them
+            // small; a leading NaN or infinity must not become the shift
+            double shift = 0;
+            for (int i = fromIndex; i < toIndex; i++) {
+                if (Double.isFinite(prices[i])) {
+                    shift = prices[i];
+                    break;
+                }
+            }
+            double sum = 0, compensation = 0;
+            double shiftedSum = 0, shiftedSquares = 0;
+            double min = Double.NaN, max = Double.NaN;
+            long argMin = -1, argMax = -1;
+            for (int i = fromIndex; i < toIndex; i++) {
+                double price = prices[i];
+                double total = sum + price;
+                if (Math.abs(sum) >= Math.abs(price)) {
+                    compensation += (sum - total) + price;
+                } else {
+                    compensation += (price - total) + sum;
+                }
+                sum = total;
+
+                double deviation = price - shift;
+                shiftedSum += deviation;
+                shiftedSquares += deviation * deviation;
+
+                // Strict comparisons keep the earliest position on ties
+                if (price < min || (argMin < 0 && !Double.isNaN(price))) {
+                    min = price;
+                    argMin = i - fromIndex;
+                }
+                if (price > max || (argMax < 0 && !Double.isNaN(price))) {
+                    max = price;
+                    argMax = i - fromIndex;
+                }
+            }
+
+            long count = toIndex - fromIndex;
+            double m2 = Math.max(0, shiftedSquares - shiftedSum * shiftedSum / count);
+            return new PriceSummary(count, sum, compensation, (sum + compensation) / count, m2,
+                min, max, argMin, argMax, prices[fromIndex], prices[toIndex - 1]);
+        }
+
+        /**
+         * Summarizes the whole array, splitting large arrays across the fork-join pool
+         * @param prices Array of stock prices; null is treated as empty
+         */
+        public static PriceSummary parallelOf(double[] prices) {
+            if (prices == null) {
+                return EMPTY;
+            }
+            if (prices.length < AggregationKernels.PARALLEL_THRESHOLD) {
+                return of(prices, 0, prices.length);
+            }
+            return ForkJoinPool.commonPool().invoke(new SummaryTask(prices, 0, prices.length));
+        }
+
+        /**
+         * Combines this summary with the summary of the prices that follow it
+         * @param next Summary of the chunk immediately after this one
+         * @return PriceSummary Summary of both chunks together
+         */
+        public PriceSummary merge(PriceSummary next) {
+            if (next.count == 0) {
+                return this;
+            }
+            if (count == 0) {
+                return next;
+            }
+
+            long total = count + next.count;
+            double combined = sum + next.sum;
+            double error = Math.abs(sum) >= Math.abs(next.sum)
+                ? (sum - combined) + next.sum
+                : (next.sum - combined) + sum;
+            double mergedCompensation = compensation + next.compensation + error;
+
+            // Chan et al. parallel variance update
+            double delta = next.mean - mean;
+            double mergedM2 = m2 + next.m2 + delta * delta * ((double) count * next.count / total);
+
+            double mergedMin = min;
+            long mergedArgMin = argMin;
+            if (next.argMin >= 0 && (argMin < 0 || next.min < min)) {
+                mergedMin = next.min;
+                mergedArgMin = next.argMin + count;
+            }
+            double mergedMax = max;
+            long mergedArgMax = argMax;
+            if (next.argMax >= 0 && (argMax < 0 || next.max > max)) {
+                mergedMax = next.max;
+                mergedArgMax = next.argMax + count;
+            }
+
+            return new PriceSummary(total, combined, mergedCompensation,
+                (combined + mergedCompensation) / total, mergedM2,
+                mergedMin, mergedMax, mergedArgMin, mergedArgMax, first, next.last);
+        }
+
+        // Getter methods for accessing the statistics
+        public long getCount() { return count; }
+        public double getSum() { return sum + compensation; }
+        public double getMean() { return count == 0 ? 0 : mean; }
+        public double getMin() { return min; }
+        public double getMax() { return max; }
+        public long getArgMin() { return argMin; }
+        public long getArgMax() { return argMax; }
+        public double getFirst() { return first; }
+        public double getLast() { return last; }
+
+        /**
+         * @return double Population variance, or 0 for fewer than two prices
+         */
+        public double getVariance() {
+            return count < 2 ? 0 : m2 / count;
+        }
+
+        /**
+         * @return double Population standard deviation
+         */
+        public double getStandardDeviation() {
+            return Math.sqrt(getVariance());
+        }
+
+        /**
+         * Fork-join task that summarizes halves and merges them in order
+         */
+        private static class SummaryTask extends RecursiveTask<PriceSummary> {
+            private static final long serialVersionUID = 1L;
+            private final double[] prices;
+            private final int fromIndex;
+            private final int toIndex;
+
+            SummaryTask(double[] prices, int fromIndex, int toIndex) {
+                this.prices = prices;
+                this.fromIndex = fromIndex;
+                this.toIndex = toIndex;
+            }
+
+            @Override
+            protected PriceSummary compute() {
+                if (toIndex - fromIndex <= AggregationKernels.PARALLEL_GRAIN) {
+                    return of(prices, fromIndex, toIndex);
+                }
+                int mid = (fromIndex + toIndex) >>> 1;
+                SummaryTask left = new SummaryTask(prices, fromIndex, mid);
+                left.fork();
+                PriceSummary right = new SummaryTask(prices, mid, toIndex).compute();
+                return left.join().merge(right);
+            }
+        }
+    }
+
+    /**
+     * PrefixSumIndex - Reusable running totals over a price array
+     * Built once in a single pass; afterwards the sum or average of any
+     * day range is answered in constant time. Each running total is kept
+     * as a value plus its Neumaier compensation term so precision holds
+     * even over hundreds of millions of prices.
+     */
+    static class PrefixSumIndex {
+        private final double[] sums;          // sums[k] = rounded total of the first k prices
+        private final double[] compensations; // Lost low-order bits for each entry in sums
+
+        /**
+         * Builds the index over the given prices
+         * @param prices Array of stock prices; null is treated as empty
+         */
+        public PrefixSumIndex(double[] prices) {
+            int n = prices == null ? 0 : prices.length;
+            sums = new double[n + 1];
+            compensations = new double[n + 1];
+
+            double sum = 0;
+            double compensation = 0;
+            for (int i = 0; i < n; i++) {
+                double price = prices[i];
+                double total = sum + price;
+                // Recover the bits lost by the addition from whichever operand is smaller
+                if (Math.abs(sum) >= Math.abs(price)) {
+                    compensation += (sum - total) + price;
+                } else {
+                    compensation += (price - total) + sum;
+                }
+                sum = total;
+                sums[i + 1] = sum;
+                compensations[i + 1] = compensation;
+            }
+        }
+
+        /**
+         * @return int Number of prices covered by the index
+         */
+        public int size() {
+            return sums.length - 1;
+        }
+
+        /**
+         * Returns the cumulative sum of the first count prices
+         * @param count Number of leading prices to include (0 to size())
+         * @return double Sum of prices[0] through prices[count - 1]
+         * @throws IndexOutOfBoundsException if count is out of range
+         */
+        public double prefixSum(int count) {
+            Objects.checkIndex(count, sums.length);
+            return sums[count] + compensations[count];
+        }
+
+        /**
+         * Returns the sum of prices[fromIndex] through prices[toIndex - 1]
+         * @param fromIndex First index included (zero-based)
+         * @param toIndex Index after the last one included
+         * @return double Sum of the range, or 0 for an empty range
+         * @throws IndexOutOfBoundsException if the range is invalid
+         */
+        public double rangeSum(int fromIndex, int toIndex) {
+            Objects.checkFromToIndex(fromIndex, toIndex, size());
+            return (sums[toIndex] - sums[fromIndex])
+                + (compensations[toIndex] - compensations[fromIndex]);
+        }
+
+        /**
+         * Returns the average of prices[fromIndex] through prices[toIndex - 1]
+         * @param fromIndex First index included (zero-based)
+         * @param toIndex Index after the last one included
+         * @return double Average of the range, or 0 for an empty range
+         * @throws IndexOutOfBoundsException if the range is invalid
+         */
+        public double rangeAverage(int fromIndex, int toIndex) {
+            double sum = rangeSum(fromIndex, toIndex);
+            return fromIndex == toIndex ? 0 : sum / (toIndex - fromIndex);
+        }
+    }
+
+    /**
+     * RangeExtremumIndex - Sparse table for range max/min over a fixed price array
+     * Built once in O(n log n); afterwards the maximum or minimum of any day
+     * range, and the day it occurred on, is answered in constant time.
+     * The index keeps a reference to the prices, which must not be modified.
+     * Ties are resolved to the earliest day.
+     */
+    static class RangeExtremumIndex {
+        private final double[] prices;
+        // maxLevels[k][i] = index of the maximum in prices[i .. i + 2^(k+1))
+        private final int[][] maxLevels;
+        private final int[][] minLevels;
+
+        /**
+         * Builds the sparse tables over the given prices
+         * @param prices Array of stock prices; null is treated as empty
+         */
+        public RangeExtremumIndex(double[] prices) {
+            this.prices = prices == null ? new double[0] : prices;
+            int n = this.prices.length;
+            int levels = n < 2 ? 0 : 31 - Integer.numberOfLeadingZeros(n);
+            maxLevels = new int[levels][];
+            minLevels = new int[levels][];
+
+            for (int k = 0; k < levels; k++) {
+                int half = 1 << k;
+                int width = half << 1;
+                int[] maxLevel = new int[n - width + 1];
+                int[] minLevel = new int[n - width + 1];
+                for (int i = 0; i < maxLevel.length; i++) {
+                    maxLevel[i] = maxOf(argAt(maxLevels, k, i), argAt(maxLevels, k, i + half));
+                    minLevel[i] = minOf(argAt(minLevels, k, i), argAt(minLevels, k, i + half));
+                }
+                maxLevels[k] = maxLevel;
+                minLevels[k] = minLevel;
+            }
+        }
+
+        /**
+         * @return int Number of prices covered by the index
+         */
+        public int size() {
+            return prices.length;
+        }
+
+        /**
+         * Finds the day with the highest price in prices[fromIndex .. toIndex)
+         * @param fromIndex First index included (zero-based)
+         * @param toIndex Index after the last one included
+         * @return int Index of the earliest maximum
+         * @throws IndexOutOfBoundsException if the range is invalid
+         * @throws IllegalArgumentException if the range is empty
+         */
+        public int rangeArgMax(int fromIndex, int toIndex) {
+            int k = level(fromIndex, toIndex);
+            return maxOf(argAt(maxLevels, k, fromIndex), argAt(maxLevels, k, toIndex - (1 << k)));
+        }
+
+        /**
+         * Finds the day with the lowest price in prices[fromIndex .. toIndex)
+         * @param fromIndex First index included (zero-based)
+         * @param toIndex Index after the last one included
+         * @return int Index of the earliest minimum
+         * @throws IndexOutOfBoundsException if the range is invalid
+         * @throws IllegalArgumentException if the range is empty
+         */
+        public int rangeArgMin(int fromIndex, int toIndex) {
+            int k = level(fromIndex, toIndex);
+            return minOf(argAt(minLevels, k, fromIndex), argAt(minLevels, k, toIndex - (1 << k)));
+        }
+
+        /**
+         * @return double Highest price in prices[fromIndex .. toIndex)
+         */
+        public double rangeMax(int fromIndex, int toIndex) {
+            return prices[rangeArgMax(fromIndex, toIndex)];
+        }
+
+        /**
+         * @return double Lowest price in prices[fromIndex .. toIndex)
+         */
+        public double rangeMin(int fromIndex, int toIndex) {
+            return prices[rangeArgMin(fromIndex, toIndex)];
+        }
+
+        // Largest k such that two windows of 2^k cover the range
+        private int level(int fromIndex, int toIndex) {
+            Objects.checkFromToIndex(fromIndex, toIndex, prices.length);
+            if (fromIndex == toIndex) {
+                throw new IllegalArgumentException("Range must contain at least one price");
+            }
+            return 31 - Integer.numberOfLeadingZeros(toIndex - fromIndex);
+        }
+
+        // Level 0 covers single prices, so it is the identity and is not stored
+        private static int argAt(int[][] levels, int k, int i) {
+            return k == 0 ? i : levels[k - 1][i];
+        }
+
+        private int maxOf(int a, int b) {
+            if (prices[a] == prices[b]) {
+                return Math.min(a, b);
+            }
+            return prices[b] > prices[a] ? b : a;
+        }
+
+        private int minOf(int a, int b) {
+            if (prices[a] == prices[b]) {
+                return Math.min(a, b);
+            }
+            return prices[b] < prices[a] ? b : a;
+        }
+    }
+
+    /**
+     * AppendableExtremumTree - Segment tree for range max/min over a growing series
+     * Use instead of RangeExtremumIndex when prices keep arriving: each append
+     * and each range query takes O(log n). Ties are resolved to the earliest day.
+     */
+    static class AppendableExtremumTree {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private double[] prices;    // Appended prices, in arrival order
+        private int[] maxTree;      // Heap-ordered tree of argmax indices, -1 for empty leaves
+        private int[] minTree;      // Heap-ordered tree of argmin indices, -1 for empty leaves
+        private int capacity;       // Number of leaves (power of two)
+        private int size;           // Number of prices appended so far
+
+        public AppendableExtremumTree() {
+            prices = new double[INITIAL_CAPACITY];
+            allocate(INITIAL_CAPACITY);
+        }
+
+        /**
+         * Builds a tree already holding the given prices
+         * @param initialPrices Prices to start with
+         */
+        public AppendableExtremumTree(double[] initialPrices) {
+            this();
+            for (double price : initialPrices) {
+                append(price);
+            }
+        }
+
+        /**
+         * @return int Number of prices appended so far
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return double The price at the given index
+         */
+        public double get(int index) {
+            Objects.checkIndex(index, size);
+            return prices[index];
+        }
+
+        /**
+         * Adds a price to the end of the series
+         * @param price The new price
+         */
+        public void append(double price) {
+            if (size == capacity) {
+                prices = Arrays.copyOf(prices, capacity * 2);
+                allocate(capacity * 2);
+                for (int i = 0; i < size; i++) {
+                    maxTree[capacity + i] = i;
+                    minTree[capacity + i] = i;
+                }
+                for (int node = capacity - 1; node > 0; node--) {
+                    maxTree[node] = maxOf(maxTree[2 * node], maxTree[2 * node + 1]);
+                    minTree[node] = minOf(minTree[2 * node], minTree[2 * node + 1]);
+                }
+            }
+
+            int index = size++;
+            prices[index] = price;
+            int node = capacity + index;
+            maxTree[node] = index;
+            minTree[node] = index;
+            for (node >>= 1; node > 0; node >>= 1) {
+                maxTree[node] = maxOf(maxTree[2 * node], maxTree[2 * node + 1]);
+                minTree[node] = minOf(minTree[2 * node], minTree[2 * node + 1]);
+            }
+        }
+
+        /**
+         * Finds the day with the highest price in [fromIndex, toIndex)
+         * @return int Index of the earliest maximum
+         * @throws IndexOutOfBoundsException if the range is invalid
+         * @throws IllegalArgumentException if the range is empty
+         */
+        public int rangeArgMax(int fromIndex, int toIndex) {
+            checkRange(fromIndex, toIndex);
+            int best = -1;
+            for (int lo = fromIndex + capacity, hi = toIndex + capacity; lo < hi; lo >>= 1, hi >>= 1) {
+                if ((lo & 1) == 1) {
+                    best = maxOf(best, maxTree[lo++]);
+                }
+                if ((hi & 1) == 1) {
+                    best = maxOf(best, maxTree[--hi]);
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Finds the day with the lowest price in [fromIndex, toIndex)
+         * @return int Index of the earliest minimum
+         * @throws IndexOutOfBoundsException if the range is invalid
+         * @throws IllegalArgumentException if the range is empty
+         */
+        public int rangeArgMin(int fromIndex, int toIndex) {
+            checkRange(fromIndex, toIndex);
+            int best = -1;
+            for (int lo = fromIndex + capacity, hi = toIndex + capacity; lo < hi; lo >>= 1, hi >>= 1) {
+                if ((lo & 1) == 1) {
+                    best = minOf(best, minTree[lo++]);
+                }
+                if ((hi & 1) == 1) {
+                    best = minOf(best, minTree[--hi]);
+                }
+            }
+            return best;
+        }
+
+        /**
+         * @return double Highest price in [fromIndex, toIndex)
+         */
+        public double rangeMax(int fromIndex, int toIndex) {
+            return prices[rangeArgMax(fromIndex, toIndex)];
+        }
+
+        /**
+         * @return double Lowest price in [fromIndex, toIndex)
+         */
+        public double rangeMin(int fromIndex, int toIndex) {
+            return prices[rangeArgMin(fromIndex, toIndex)];
+        }
+
+        private void allocate(int newCapacity) {
+            capacity = newCapacity;
+            maxTree = new int[2 * newCapacity];
+            minTree = new int[2 * newCapacity];
+            Arrays.fill(maxTree, -1);
+            Arrays.fill(minTree, -1);
+        }
+
+        private void checkRange(int fromIndex, int toIndex) {
+            Objects.checkFromToIndex(fromIndex, toIndex, size);
+            if (fromIndex == toIndex) {
+                throw new IllegalArgumentException("Range must contain at least one price");
+            }
+        }
+
+        // Combine two candidate indices; -1 means "no candidate"
+        private int maxOf(int a, int b) {
+            if (a < 0 || b < 0) {
+                return Math.max(a, b);
+            }
+            if (prices[a] == prices[b]) {
+                return Math.min(a, b);
+            }
+            return prices[b] > prices[a] ? b : a;
+        }
+
+        private int minOf(int a, int b) {
+            if (a < 0 || b < 0) {
+                return Math.max(a, b);
+            }
+            if (prices[a] == prices[b]) {
+                return Math.min(a, b);
+            }
+            return prices[b] < prices[a] ? b : a;
+        }
+    }
+
+    /**
+     * FrequencyIndex - Sorted copy of the prices for fast occurrence counts
+     * Built once in O(n log n); each count is then two binary searches.
+     * A price matches a target exactly when countOccurrences would count it,
+     * i.e. Math.abs(price - target) < PRICE_EPSILON.
+     */
+    static class FrequencyIndex {
+        private final double[] sorted;  // Prices in ascending order, NaN values removed
+
+        /**
+         * Builds the index over the given prices
+         * @param prices Array of stock prices; null is treated as empty
+         */
+        public FrequencyIndex(double[] prices) {
+            double[] copy = prices == null ? new double[0] : prices.clone();
+            Arrays.sort(copy);
+            // Arrays.sort places NaN last; NaN never matches, so drop it
+            int length = copy.length;
+            while (length > 0 && Double.isNaN(copy[length - 1])) {
+                length--;
+            }
+            sorted = length == copy.length ? copy : Arrays.copyOf(copy, length);
+        }
+
+        /**
+         * Counts the prices within PRICE_EPSILON of the target
+         * @param targetPrice The specific price to count
+         * @return int Number of matching prices
+         */
+        public int count(double targetPrice) {
+            if (!Double.isFinite(targetPrice)) {
+                return 0;  // Infinite or NaN differences are never below epsilon
+            }
+            return firstAbove(targetPrice) - firstMatchOrAbove(targetPrice);
+        }
+
+        /**
+         * Counts many target prices at once
+         * @param targetPrices Prices to count
+         * @return int[] Count for each target, in the same order
+         */
+        public int[] countAll(double[] targetPrices) {
+            int[] counts = new int[targetPrices.length];
+            for (int i = 0; i < targetPrices.length; i++) {
+                counts[i] = count(targetPrices[i]);
+            }
+            return counts;
+        }
+
+        // First index whose price matches the target or lies above it
+        private int firstMatchOrAbove(double target) {
+            int lo = 0;
+            int hi = sorted.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                double price = sorted[mid];
+                if (price >= target || Math.abs(price - target) < PRICE_EPSILON) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            return lo;
+        }
+
+        // First index whose price lies above the target without matching it
+        private int firstAbove(double target) {
+            int lo = 0;
+            int hi = sorted.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                double price = sorted[mid];
+                if (price > target && !(Math.abs(price - target) < PRICE_EPSILON)) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            return lo;
+        }
+    }
+
+    /**
+     * PriceLoader - Bulk, non-interactive loader for large price dumps
+     * Reads a file or stdin in large chunks and parses each price straight into
+     * a growable primitive double array, avoiding per-line Strings and boxing.
+     * Prices may be separated by newlines, spaces, tabs or commas.
+     */
+    static class PriceLoader {
+        private static final int BUFFER_SIZE = 1 << 16;   // Bytes per channel read
+        private static final int INITIAL_CAPACITY = 1024; // Starting size of the price array
+        private static final int MAX_TOKEN_LENGTH = 64;   // Longest number text accepted
+        static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+        private static final int MAX_FAST_DIGITS = 18;    // Digits that always fit in a long
+        private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+        // Powers of ten that are exactly representable as doubles
+        private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+        };
+
+        /**
+         * Result of a bulk load: the parsed prices and how long parsing took
+         */
+        static class LoadResult {
+            private final double[] prices;
+            private final long elapsedNanos;
+
+            LoadResult(double[] prices, long elapsedNanos) {
+                this.prices = prices;
+                this.elapsedNanos = elapsedNanos;
+            }
+
+            // Getter methods for accessing private fields
+            public double[] getPrices() { return prices; }
+            public long getElapsedNanos() { return elapsedNanos; }
+
+            /**
+             * @return double Parsed rows per second, or 0 if no time was measured
+             */
+            public double getRowsPerSecond() {
+                return elapsedNanos == 0 ? 0 : prices.length * 1e9 / elapsedNanos;
+            }
+        }
+
+        /**
+         * Loads all prices from a file using NIO channel reads
+         * @param path Location of the price file
+         * @return LoadResult The parsed prices and timing
+         * @throws IOException if the file cannot be read
+         * @throws NumberFormatException if a value is not a valid number
+         */
+        public static LoadResult loadFile(Path path) throws IOException {
+            return loadFile(path, null);
+        }
+
+        /**
+         * Loads all prices from a file, also passing each price to an observer
+         * @param path Location of the price file
+         * @param observer Receives every price as it is parsed; may be null
+         * @return LoadResult The parsed prices and timing
+         * @throws IOException if the file cannot be read
+         * @throws NumberFormatException if a value is not a valid number
+         */
+        public static LoadResult loadFile(Path path, DoubleConsumer observer) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return load(channel, observer);
+            }
+        }
+
+        /**
+         * Loads all prices from an input stream such as System.in
+         * The stream is not closed
+         * @param in Stream containing the price text
+         * @return LoadResult The parsed prices and timing
+         * @throws IOException if the stream cannot be read
+         * @throws NumberFormatException if a value is not a valid number
+         */
+        public static LoadResult loadStream(InputStream in) throws IOException {
+            return load(Channels.newChannel(in), null);
+        }
+
+        /**
+         * Loads all prices from an input stream, also passing each price to an observer
+         * The stream is not closed
+         * @param in Stream containing the price text
+         * @param observer Receives every price as it is parsed; may be null
+         * @return LoadResult The parsed prices and timing
+         * @throws IOException if the stream cannot be read
+         * @throws NumberFormatException if a value is not a valid number
+         */
+        public static LoadResult loadStream(InputStream in, DoubleConsumer observer) throws IOException {
+            return load(Channels.newChannel(in), observer);
+        }
+
+        /**
+         * Reads the channel to the end, parsing every delimited token as a price
+         * @param channel Source of ASCII price text
+         * @return LoadResult The parsed prices and timing
+         * @throws IOException if the channel cannot be read
+         * @throws NumberFormatException if a value is not a valid number
+         */
+        public static LoadResult load(ReadableByteChannel channel) throws IOException {
+            return load(channel, null);
+        }
+
+        /**
+         * Reads the channel to the end, also passing each price to an observer
+         * (for example a QuantileSketch) during the same pass
+         * @param channel Source of ASCII price text
+         * @param observer Receives every price as it is parsed; may be null
+         * @return LoadResult The parsed prices and timing
+         * @throws IOException if the channel cannot be read
+         * @throws NumberFormatException if a value is not a valid number
+         */
+        public static LoadResult load(ReadableByteChannel channel, DoubleConsumer observer) throws IOException {
+            long start = System.nanoTime();
+            PriceArrayBuilder builder = new PriceArrayBuilder();
+            stream(channel, observer == null ? builder : builder.andThen(observer));
+            return new LoadResult(builder.toArray(), System.nanoTime() - start);
+        }
+
+        /**
+         * Streams every price in a file to the sink as soon as it is parsed
+         * @param path Location of the price file
+         * @param sink Receives each price in file order
+         * @return long Number of prices delivered
+         * @throws IOException if the file cannot be read
+         * @throws NumberFormatException if a value is not a valid number
+         */
+        public static long streamFile(Path path, DoubleConsumer sink) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return stream(channel, sink);
+            }
+        }
+
+        /**
+         * Streams every price in the channel to the sink as soon as it is parsed
+         * Nothing is buffered beyond the current read chunk
+         * @param channel Source of ASCII price text
+         * @param sink Receives each price in input order
+         * @return long Number of prices delivered
+         * @throws IOException if the channel cannot be read
+         * @throws NumberFormatException if a value is not a valid number
+         */
+        public static long stream(ReadableByteChannel channel, DoubleConsumer sink) throws IOException {
+            return streamTokens(channel, (token, length, line) -> sink.accept(parsePrice(token, length, line)));
+        }
+
+        /**
+         * Receives the raw bytes of each delimited value, for parsers other than parsePrice
+         */
+        interface TokenSink {
+            void accept(byte[] token, int length, long line);
+        }
+
+        /**
+         * Splits the channel into delimited values and hands each one to the sink
+         * The token array is reused, so sinks must not keep a reference to it
+         * @param channel Source of ASCII price text
+         * @param sink Receives each value's bytes and line number in input order
+         * @return long Number of values delivered
+         * @throws IOException if the channel cannot be read
+         * @throws NumberFormatException if a value is longer than MAX_TOKEN_LENGTH
+         */
+        public static long streamTokens(ReadableByteChannel channel, TokenSink sink) throws IOException {
+            byte[] chunk = new byte[BUFFER_SIZE];
+            ByteBuffer buffer = ByteBuffer.wrap(chunk);
+            byte[] token = new byte[MAX_TOKEN_LENGTH];
+            int tokenLength = 0;
+            long line = 1;
+            long count = 0;
+
+            int read;
+            while ((read = channel.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    byte b = chunk[i];
+                    if (isDelimiter(b)) {
+                        if (tokenLength > 0) {
+                            sink.accept(token, tokenLength, line);
+                            count++;
+                            tokenLength = 0;
+                        }
+                        if (b == '\n') {
+                            line++;
+                        }
+                    } else {
+                        if (tokenLength == MAX_TOKEN_LENGTH) {
+                            throw new NumberFormatException("Value too long on line " + line);
+                        }
+                        token[tokenLength++] = b;
+                    }
+                }
+                buffer.clear();
+            }
+
+            // The last value may not be followed by a delimiter
+            if (tokenLength > 0) {
+                sink.accept(token, tokenLength, line);
+                count++;
+            }
+            return count;
+        }
+
+        /**
+         * Growable primitive array that collects streamed prices
+         */
+        static class PriceArrayBuilder implements DoubleConsumer {
+            private double[] prices = new double[INITIAL_CAPACITY];
+            private int count;
+
+            @Override
+            public void accept(double price) {
+                if (count == prices.length) {
+                    prices = grow(prices);
+                }
+                prices[count++] = price;
+            }
+
+            double[] toArray() {
+                return Arrays.copyOf(prices, count);
+            }
+        }
+
+        private static boolean isDelimiter(byte b) {
+            return b == '\n' || b == '\r' || b == ' ' || b == '\t' || b == ',';
+        }
+
+        static double[] grow(double[] prices) {
+            if (prices.length == MAX_ARRAY_LENGTH) {
+                throw new IllegalStateException("Too many prices to hold in one array");
+            }
+            int newLength = (int) Math.min((long) prices.length * 2, MAX_ARRAY_LENGTH);
+            return Arrays.copyOf(prices, newLength);
+        }
+
+        /**
+         * Parses one ASCII decimal number such as "-123.45"
+         * Plain decimals with up to 18 significant digits are converted exactly
+         * from a long mantissa; anything else (exponents, very long values)
+         * falls back to Double.parseDouble so results always match it.
+         * @param token Bytes holding the number text
+         * @param length Number of bytes used in token
+         * @param line Line number used in error messages
+         * @return double The parsed value
+         * @throws NumberFormatException if the text is not a valid number
+         */
+        static double parsePrice(byte[] token, int length, long line) {
+            int i = 0;
+            boolean negative = false;
+            if (token[0] == '-' || token[0] == '+') {
+                negative = token[0] == '-';
+                i++;
+            }
+
+            long mantissa = 0;
+            int digits = 0;        // Significant digits collected into the mantissa
+            int scale = 0;         // Digits seen after the decimal point
+            boolean sawDigit = false;
+            boolean sawPoint = false;
+            for (; i < length; i++) {
+                int b = token[i];
+                if (b >= '0' && b <= '9') {
+                    sawDigit = true;
+                    if (mantissa != 0 || b != '0') {
+                        if (++digits > MAX_FAST_DIGITS) {
+                            return parseSlow(token, length, line);
+                        }
+                    }
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (sawPoint) {
+                        scale++;
+                    }
+                } else if (b == '.' && !sawPoint) {
+                    sawPoint = true;
+                } else {
+                    // Exponents and anything unusual go through the JDK parser
+                    return parseSlow(token, length, line);
+                }
+            }
+            if (!sawDigit) {
+                return parseSlow(token, length, line);
+            }
+            if (mantissa >= MAX_EXACT_MANTISSA || scale >= POWERS_OF_TEN.length) {
+                return parseSlow(token, length, line);
+            }
+
+            // Both operands are exact, so one division gives the correctly rounded result
+            double value = (double) mantissa / POWERS_OF_TEN[scale];
+            return negative ? -value : value;
+        }
+
+        private static double parseSlow(byte[] token, int length, long line) {
+            String text = new String(token, 0, length, StandardCharsets.US_ASCII);
+            try {
+                return Double.parseDouble(text);
+            } catch (NumberFormatException e) {
+                throw new NumberFormatException("Invalid price on line " + line + ": " + text);
             }
         }
     }
@@ -3,7 +3,33 @@
  * This system manages students, courses, enrollments, and grades in a university setting.
  * It provides a command-line interface for administrators to perform various operations.
  */
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+import java.util.zip.CRC32;
 
 /**
  * Main class containing the command-line interface and program entry point.
@@ -13,11 +39,20 @@ public class w5a {
     // Define all classes as static nested classes first
     static class Student {
         // Counter for generating unique student IDs, starts at 1000 and increments for each new student
-        private static int nextStudentId = 1000;
+        // Atomic so students created on different threads never share an ID
+        static final int FIRST_ID = 1000;
+        private static final AtomicInteger nextStudentId = new AtomicInteger(FIRST_ID);
         private int studentId;          // Unique identifier for each student
         private String name;            // Student's full name
-        // Maps Course objects to their corresponding grades (stored as percentages)
-        private Map<Course, Double> enrolledCourses;
+        // The student's row of the gradebook: each enrolled course, in enrollment order,
+        // with the slot holding this student's grade in that course's GradeColumn.
+        // Guarded by rowLock, since enrollments in different courses run concurrently
+        private Course[] rowCourses = NO_COURSES;
+        private int[] rowSlots = NO_SLOTS;
+        private int rowSize;
+        private final Object rowLock = new Object();
+        private static final Course[] NO_COURSES = new Course[0];
+        private static final int[] NO_SLOTS = new int[0];
 
         /**
          * Creates a new Student with an auto-generated ID and initializes their course list.
@@ -28,260 +63,2882 @@ public class w5a {
             if (name == null || name.trim().isEmpty()) {
                 throw new IllegalArgumentException("Student name cannot be empty");
             }
-            this.studentId = nextStudentId++;
+            this.studentId = nextStudentId.getAndIncrement();
             this.name = name.trim();
-            this.enrolledCourses = new HashMap<>();
         }
 
+        /**
+         * Recreates a saved student with its original ID
+         * Moves the ID counter past the restored ID so new students never reuse it
+         * @param studentId The ID the student was saved with
+         * @param name The full name of the student
+         */
+        Student(int studentId, String name) {
+            this.studentId = studentId;
+            this.name = name;
+            nextStudentId.accumulateAndGet(studentId + 1, Math::max);
+        }
+
+        // ID the next new student will receive; saved with snapshots
+        static int peekNextId() { return nextStudentId.get(); }
+        static void advanceNextId(int next) { nextStudentId.accumulateAndGet(next, Math::max); }
+
         // Getter methods for accessing private fields
         public int getStudentId() { return studentId; }
         public String getName() { return name; }
-        public Map<Course, Double> getEnrolledCourses() { return enrolledCourses; }
 
         /**
-         * Enrolls the student in a new course with an initial grade of 0.0
-         * @param course The course to enroll in
+         * Returns the courses the student is enrolled in
+         * @return Snapshot of the student's courses in enrollment order
+         */
+        public List<Course> getEnrolledCourses() {
+            synchronized (rowLock) {
+                return Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(rowCourses, rowSize)));
+            }
+        }
+
+        /**
+         * Finds where this student's grade is stored in a course's column
+         * A student's row is short, so a linear scan beats any hashing here.
+         * @param course The course to look for
+         * @return The slot in the course's GradeColumn, or -1 if not enrolled
+         */
+        int slotIn(Course course) {
+            synchronized (rowLock) {
+                for (int i = 0; i < rowSize; i++) {
+                    if (rowCourses[i] == course) return rowSlots[i];
+                }
+                return -1;
+            }
+        }
+
+        /**
+         * Adds a course to the student's row; called by Course under its roster lock
+         * @param course The course being joined
+         * @param slot The slot holding the student's grade in that course
+         */
+        void addEnrollment(Course course, int slot) {
+            synchronized (rowLock) {
+                if (rowSize == rowCourses.length) {
+                    int capacity = Math.max(4, rowSize * 2);
+                    rowCourses = Arrays.copyOf(rowCourses, capacity);
+                    rowSlots = Arrays.copyOf(rowSlots, capacity);
+                }
+                rowCourses[rowSize] = course;
+                rowSlots[rowSize] = slot;
+                rowSize++;
+            }
+        }
+
+        /**
+         * Records that a course moved this student's grade to another slot
+         * @param course The course that compacted its column
+         * @param slot The new slot
+         */
+        void moveEnrollment(Course course, int slot) {
+            synchronized (rowLock) {
+                for (int i = 0; i < rowSize; i++) {
+                    if (rowCourses[i] == course) {
+                        rowSlots[i] = slot;
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Removes a course from the student's row, keeping the others in order
+         * @param course The course being left
+         */
+        void removeEnrollment(Course course) {
+            synchronized (rowLock) {
+                for (int i = 0; i < rowSize; i++) {
+                    if (rowCourses[i] == course) {
+                        System.arraycopy(rowCourses, i + 1, rowCourses, i, rowSize - i - 1);
+                        System.arraycopy(rowSlots, i + 1, rowSlots, i, rowSize - i - 1);
+                        rowCourses[--rowSize] = null;
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Updates the student's grade for a specific course
+         * Does nothing if the student is not enrolled in the course.
+         * @param course The course to update the grade for
+         * @param grade The new grade (percentage)
+         * @return true if the student is enrolled and the grade was stored
+         * @throws IllegalArgumentException if grade is not between 0 and 100
+         */
+        public boolean updateGrade(Course course, double grade) {
+            if (grade < 0 || grade > 100) {
+                throw new IllegalArgumentException("Grade must be between 0 and 100");
+            }
+            return course.setGrade(this, grade);
+        }
+
+        /**
+         * Retrieves the student's grade for a specific course
+         * @param course The course to get the grade for
+         * @return The grade as a percentage, or 0.0 if not enrolled
+         */
+        public double getGrade(Course course) {
+            return course.gradeOf(this);
+        }
+    }
+
+    /**
+     * One course's column of the gradebook.
+     * <p>
+     * Grades are kept as a sparse student x course matrix. Each course owns a column
+     * of parallel arrays (student, grade) in enrollment order, and each Student holds
+     * its row as (course, slot) pairs pointing into those columns. Grades are plain
+     * doubles stored once, rosters and averages are contiguous array scans, and a
+     * student's courses are found without touching any course.
+     * <p>
+     * Dropping a student leaves an empty slot so other students' slots stay put;
+     * once empty slots outnumber students the column is compacted and the moved
+     * students' rows are updated. Not thread-safe: the owning Course guards it.
+     */
+    static class GradeColumn {
+        private static final int MIN_COMPACT_SLOTS = 16;
+
+        private Student[] students = new Student[4];    // null marks an empty slot
+        private double[] grades = new double[4];
+        private int slotCount;                          // Slots in use, including empty ones
+        private int size;                               // Students enrolled
+
+        // Getter methods for accessing private fields
+        int size() { return size; }
+        Student studentAt(int slot) { return students[slot]; }
+        double gradeAt(int slot) { return grades[slot]; }
+
+        /**
+         * Appends a student with a grade of 0.0
+         * @param student The student to add
+         * @return The slot the student was given
+         */
+        int add(Student student) {
+            if (slotCount == students.length) {
+                int capacity = slotCount * 2;
+                students = Arrays.copyOf(students, capacity);
+                grades = Arrays.copyOf(grades, capacity);
+            }
+            students[slotCount] = student;
+            grades[slotCount] = 0.0;
+            size++;
+            return slotCount++;
+        }
+
+        /**
+         * Replaces the grade in a slot
+         * @return The previous grade
+         */
+        double set(int slot, double grade) {
+            double previous = grades[slot];
+            grades[slot] = grade;
+            return previous;
+        }
+
+        /**
+         * Empties a slot and compacts the column if it has become mostly empty
+         * @param slot The slot to clear
+         * @param course The owning course, passed to students whose slots move
+         * @return The grade that was in the slot
+         */
+        double remove(int slot, Course course) {
+            double grade = grades[slot];
+            students[slot] = null;
+            grades[slot] = 0.0;
+            size--;
+            if (slotCount >= MIN_COMPACT_SLOTS && slotCount - size > size) {
+                compact(course);
+            }
+            return grade;
+        }
+
+        // Slides remaining students down over the empty slots, preserving order
+        private void compact(Course course) {
+            int next = 0;
+            for (int slot = 0; slot < slotCount; slot++) {
+                Student student = students[slot];
+                if (student == null) continue;
+                if (slot != next) {
+                    students[next] = student;
+                    grades[next] = grades[slot];
+                    student.moveEnrollment(course, next);
+                }
+                next++;
+            }
+            Arrays.fill(students, next, slotCount, null);
+            Arrays.fill(grades, next, slotCount, 0.0);
+            slotCount = next;
+        }
+
+        /**
+         * Copies the column without its empty slots
+         * In the copy, slot i holds the i-th enrolled student.
+         * @return A compact, independent copy
+         */
+        GradeColumn copy() {
+            GradeColumn copy = new GradeColumn();
+            copy.students = new Student[Math.max(size, 1)];
+            copy.grades = new double[copy.students.length];
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (students[slot] == null) continue;
+                copy.students[copy.slotCount] = students[slot];
+                copy.grades[copy.slotCount] = grades[slot];
+                copy.slotCount++;
+            }
+            copy.size = copy.slotCount;
+            return copy;
+        }
+    }
+
+    /**
+     * Outcome of a single enrollment attempt.
+     * Batch enrollment reports these as one byte per request, using code().
+     * New values go at the end so existing codes keep their meaning.
+     */
+    enum EnrollmentResult {
+        ENROLLED, FULL, DUPLICATE, NOT_FOUND, WAITLISTED;
+
+        private static final EnrollmentResult[] VALUES = values();
+
+        // Compact code stored in batch result vectors
+        public byte code() { return (byte) ordinal(); }
+
+        /**
+         * Converts a code from a batch result vector back to its result
+         * @param code A value previously returned by code()
+         * @return The matching result
+         */
+        public static EnrollmentResult fromCode(byte code) {
+            return VALUES[code];
+        }
+    }
+
+    /**
+     * FIFO waitlist for a full course.
+     * <p>
+     * Joining is lock-free: a student takes the next ticket from an atomic counter
+     * and stores itself in that ticket's slot, in a chain of fixed-size segments
+     * created on demand with compare-and-set. Promotion is done by the owning
+     * course under its roster lock, so there is a single consumer that walks the
+     * tickets in order; if it reaches a ticket whose owner has not stored itself
+     * yet it stops, and the joining thread promotes once it has.
+     * <p>
+     * A student who leaves the line keeps their slot, which promotion skips once it
+     * sees the ticket no longer belongs to them.
+     * <p>
+     * A student's position is its ticket minus the head ticket, which is O(1).
+     * Students who left from further ahead still count until promotion passes them.
+     */
+    static class Waitlist {
+        private static final int SEGMENT_BITS = 8;
+        private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+        private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+        // Stored in a slot whose ticket turned out to be a duplicate join
+        private static final Object SKIPPED = new Object();
+
+        private static final class Segment {
+            final long index;
+            final AtomicReferenceArray<Object> slots = new AtomicReferenceArray<>(SEGMENT_SIZE);
+            final AtomicReference<Segment> next = new AtomicReference<>();
+
+            Segment(long index) {
+                this.index = index;
+            }
+        }
+
+        private final AtomicLong tailTicket = new AtomicLong();
+        private volatile long headTicket;                   // Next ticket to promote; consumer only
+        private volatile Segment headSegment = new Segment(0);
+        private volatile Segment tailSegment = headSegment; // Hint for joiners; may lag behind
+        private final Map<Student, Long> tickets = new ConcurrentHashMap<>();
+        private final AtomicInteger waiting = new AtomicInteger();  // Students in tickets
+
+        /**
+         * Appends a student without locking
+         * @param student The student to add
+         * @return false if the student was already waiting
+         */
+        boolean add(Student student) {
+            if (tickets.containsKey(student)) return false;
+            long ticket = tailTicket.getAndIncrement();
+            // Counted before the student can be removed, so the count never goes negative
+            waiting.incrementAndGet();
+            boolean added = tickets.putIfAbsent(student, ticket) == null;
+            if (!added) {
+                waiting.decrementAndGet();
+            }
+            // The slot must be filled either way, or promotion would stop at it for good
+            Segment segment = segmentFor(ticket);
+            segment.slots.set((int) ticket & SEGMENT_MASK, added ? student : SKIPPED);
+            Segment hint = tailSegment;
+            if (segment.index > hint.index) {
+                tailSegment = segment;   // Racy but harmless: it is only a starting point
+            }
+            return added;
+        }
+
+        /**
+         * Removes and returns the next waiting student; caller is the single consumer
+         * @return The student, or null if the waitlist is empty or its head is not ready yet
+         */
+        Student poll() {
+            while (headTicket < tailTicket.get()) {
+                long ticket = headTicket;
+                Segment segment = headSegment;
+                if (segment.index != ticket >>> SEGMENT_BITS) {
+                    Segment next = segment.next.get();
+                    if (next == null) return null;
+                    headSegment = segment = next;
+                }
+                int slot = (int) ticket & SEGMENT_MASK;
+                Object entry = segment.slots.get(slot);
+                if (entry == null) return null;     // Joiner took the ticket but has not stored itself yet
+                segment.slots.set(slot, null);
+                headTicket = ticket + 1;
+                // Skip duplicate joins and students who left the line since taking this ticket
+                if (entry != SKIPPED && tickets.remove(entry, ticket)) {
+                    waiting.decrementAndGet();
+                    return (Student) entry;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns a student's place in line
+         * @param student The student to look up
+         * @return 1 for the next student to be promoted, or -1 if not waiting
+         */
+        int position(Student student) {
+            Long ticket = tickets.get(student);
+            return ticket == null ? -1 : (int) (ticket - headTicket + 1);
+        }
+
+        /**
+         * Takes a student out of line without promoting them
+         * @param student The student to remove
+         * @return true if the student was waiting
+         */
+        boolean remove(Student student) {
+            if (tickets.remove(student) == null) return false;
+            waiting.decrementAndGet();
+            return true;
+        }
+
+        // Number of students waiting
+        int size() {
+            return waiting.get();
+        }
+
+        /**
+         * Lists waiting students in promotion order
+         * Only consistent when no joins or promotions run at the same time.
+         * @return The waiting students
+         */
+        List<Student> students() {
+            List<Student> waiting = new ArrayList<>();
+            Segment segment = headSegment;
+            for (long ticket = headTicket; ticket < tailTicket.get() && segment != null; ticket++) {
+                while (segment != null && segment.index < ticket >>> SEGMENT_BITS) {
+                    segment = segment.next.get();
+                }
+                if (segment == null) break;
+                Object entry = segment.slots.get((int) ticket & SEGMENT_MASK);
+                if (entry instanceof Student && Long.valueOf(ticket).equals(tickets.get(entry))) {
+                    waiting.add((Student) entry);
+                }
+            }
+            return waiting;
+        }
+
+        // Finds the segment for a ticket, linking new segments as needed
+        private Segment segmentFor(long ticket) {
+            long index = ticket >>> SEGMENT_BITS;
+            Segment segment = tailSegment;
+            if (segment.index > index) {
+                // The consumer never passes an unfilled ticket, so the head is never past ours
+                segment = headSegment;
+            }
+            while (segment.index < index) {
+                Segment next = segment.next.get();
+                if (next == null) {
+                    Segment created = new Segment(segment.index + 1);
+                    next = segment.next.compareAndSet(null, created) ? created : segment.next.get();
+                }
+                segment = next;
+            }
+            return segment;
+        }
+    }
+
+    static class Course {
+        // Move Course class implementation here, making it static
+        // Add 'static' to the class declaration and keep all the existing code
+        static final int FIRST_ID = 100;
+        private static final AtomicInteger nextCourseId = new AtomicInteger(FIRST_ID);
+        private int courseId;           // Unique identifier for each course
+        private String courseName;      // Name of the course
+        private int maxCapacity;        // Maximum number of students allowed
+        // Enrolled students and their grades, in enrollment order
+        private final GradeColumn gradeColumn = new GradeColumn();
+        // Students waiting for a seat; promoted under rosterLock whenever one frees up
+        private final Waitlist waitlist = new Waitlist();
+        // Per-course lock guarding gradeColumn and the grade total; courses never share a lock
+        private final Object rosterLock = new Object();
+        // Running total of enrolled students' grades, kept as value plus lost low-order bits
+        private double gradeSum;
+        private double gradeSumCompensation;
+
+        /**
+         * Creates a new Course with an auto-generated ID and specified capacity
+         * @param courseName The name of the course
+         * @param maxCapacity Maximum number of students that can enroll
+         * @throws IllegalArgumentException if maxCapacity is less than 1 or courseName is empty
+         */
+        public Course(String courseName, int maxCapacity) {
+            if (courseName == null || courseName.trim().isEmpty()) {
+                throw new IllegalArgumentException("Course name cannot be empty");
+            }
+            if (maxCapacity < 1) {
+                throw new IllegalArgumentException("Course capacity must be at least 1");
+            }
+            this.courseId = nextCourseId.getAndIncrement();
+            this.courseName = courseName.trim();
+            this.maxCapacity = maxCapacity;
+        }
+
+        /**
+         * Recreates a saved course with its original ID and an empty roster
+         * Moves the ID counter past the restored ID so new courses never reuse it
+         * @param courseId The ID the course was saved with
+         * @param courseName The name of the course
+         * @param maxCapacity Maximum number of students that can enroll
+         */
+        Course(int courseId, String courseName, int maxCapacity) {
+            this.courseId = courseId;
+            this.courseName = courseName;
+            this.maxCapacity = maxCapacity;
+            nextCourseId.accumulateAndGet(courseId + 1, Math::max);
+        }
+
+        // ID the next new course will receive; saved with snapshots
+        static int peekNextId() { return nextCourseId.get(); }
+        static void advanceNextId(int next) { nextCourseId.accumulateAndGet(next, Math::max); }
+
+        // Getter methods for accessing private fields
+        public int getCourseId() { return courseId; }
+        public String getCourseName() { return courseName; }
+        public int getMaxCapacity() { return maxCapacity; }
+
+        /**
+         * Returns a snapshot of the roster in enrollment order
+         * @return Read-only copy of the enrolled students
+         */
+        public List<Student> getEnrolledStudents() {
+            GradeColumn roster = snapshotRoster();
+            return Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(roster.students, roster.size())));
+        }
+
+        /**
+         * Copies the roster together with each student's grade
+         * @return Compact column where slot i holds the i-th student to enroll and their grade
+         */
+        GradeColumn snapshotRoster() {
+            synchronized (rosterLock) {
+                return gradeColumn.copy();
+            }
+        }
+
+        // Number of enrolled students
+        public int getEnrolledCount() {
+            synchronized (rosterLock) {
+                return gradeColumn.size();
+            }
+        }
+        
+        /**
+         * Attempts to enroll a student in the course if there's available capacity
+         * The duplicate check, capacity check and insert happen under this course's
+         * lock, so concurrent enrollments can never oversell the course.
+         * Prints nothing, so it is safe to call from batch and background work.
+         * @param student The student to enroll
+         * @return ENROLLED, FULL or DUPLICATE
+         */
+        public EnrollmentResult tryEnroll(Student student) {
+            synchronized (rosterLock) {
+                if (student.slotIn(this) >= 0) {
+                    return EnrollmentResult.DUPLICATE;
+                }
+                if (gradeColumn.size() >= maxCapacity) {
+                    return EnrollmentResult.FULL;
+                }
+                student.addEnrollment(this, gradeColumn.add(student));
+                return EnrollmentResult.ENROLLED;
+            }
+        }
+
+        /**
+         * Enrolls a student, or puts them on the waitlist if the course is full
+         * @param student The student to enroll
+         * @return ENROLLED, WAITLISTED or DUPLICATE
+         */
+        public EnrollmentResult enrollOrWait(Student student) {
+            EnrollmentResult result = tryEnroll(student);
+            if (result != EnrollmentResult.FULL) {
+                return result;
+            }
+            if (!waitlist.add(student)) {
+                return EnrollmentResult.DUPLICATE;
+            }
+            // A seat may have freed after tryEnroll saw the course full but before the
+            // student was in line; promoting here makes sure that seat is not left empty
+            promoteWaiting();
+            return student.slotIn(this) >= 0 ? EnrollmentResult.ENROLLED : EnrollmentResult.WAITLISTED;
+        }
+
+        /**
+         * Returns a student's place on the waitlist in constant time
+         * @param student The student to look up
+         * @return 1 for next in line, or -1 if the student is not waiting
+         */
+        public int getWaitlistPosition(Student student) {
+            return waitlist.position(student);
+        }
+
+        // Number of students waiting for a seat
+        public int getWaitlistSize() { return waitlist.size(); }
+
+        // Waiting students in promotion order; used for snapshots
+        List<Student> getWaitlistedStudents() {
+            synchronized (rosterLock) {
+                return waitlist.students();
+            }
+        }
+
+        /**
+         * Fills free seats from the head of the waitlist
+         * The capacity check and insert share the roster lock with every other
+         * enrollment, so promotion can never oversell the course.
+         */
+        void promoteWaiting() {
+            synchronized (rosterLock) {
+                while (gradeColumn.size() < maxCapacity) {
+                    Student next = waitlist.poll();
+                    if (next == null) return;
+                    if (next.slotIn(this) < 0) {
+                        next.addEnrollment(this, gradeColumn.add(next));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Attempts to enroll a student in the course if there's available capacity
+         * @param student The student to enroll
+         * @return true if enrollment successful, false if course is full or student already enrolled
+         */
+        public boolean enrollStudent(Student student) {
+            EnrollmentResult result = tryEnroll(student);
+            if (result == EnrollmentResult.DUPLICATE) {
+                System.out.println("Student is already enrolled in this course!");
+            }
+            return result == EnrollmentResult.ENROLLED;
+        }
+
+        /**
+         * Removes a student from the course and takes their grade out of the course total
+         * The freed seat goes to the head of the waitlist, if anyone is waiting.
+         * A student who is only on the waitlist is taken out of line instead.
+         * @param student The student to drop
+         * @return true if the student was enrolled or waiting and has been removed
+         */
+        public boolean dropStudent(Student student) {
+            synchronized (rosterLock) {
+                int slot = student.slotIn(this);
+                if (slot < 0) {
+                    return waitlist.remove(student);
+                }
+                student.removeEnrollment(this);
+                addToGradeSum(-gradeColumn.remove(slot, this));
+                if (gradeColumn.size() == 0) {
+                    // Nothing left to average; clear any accumulated rounding
+                    gradeSum = 0.0;
+                    gradeSumCompensation = 0.0;
+                }
+                // Hand the freed seat to the next student in line before anyone else can take it
+                promoteWaiting();
+                return true;
+            }
+        }
+
+        /**
+         * Stores a student's grade and adjusts the course total by the difference
+         * @param student The student whose grade changes
+         * @param grade The new grade
+         * @return true if the student is enrolled and the grade was stored
+         */
+        boolean setGrade(Student student, double grade) {
+            synchronized (rosterLock) {
+                int slot = student.slotIn(this);
+                if (slot < 0) {
+                    return false;
+                }
+                addToGradeSum(grade - gradeColumn.set(slot, grade));
+                return true;
+            }
+        }
+
+        /**
+         * Reads a student's grade from this course's column
+         * @param student The student to look up
+         * @return The grade, or 0.0 if the student is not enrolled
+         */
+        double gradeOf(Student student) {
+            synchronized (rosterLock) {
+                int slot = student.slotIn(this);
+                return slot < 0 ? 0.0 : gradeColumn.gradeAt(slot);
+            }
+        }
+
+        // Neumaier-compensated addition; caller holds rosterLock
+        private void addToGradeSum(double delta) {
+            double total = gradeSum + delta;
+            if (Math.abs(gradeSum) >= Math.abs(delta)) {
+                gradeSumCompensation += (gradeSum - total) + delta;
+            } else {
+                gradeSumCompensation += (delta - total) + gradeSum;
+            }
+            gradeSum = total;
+        }
+
+        /**
+         * Calculates the average grade of all enrolled students in the course
+         * Served from the running total, so it takes constant time
+         * @return The average grade as a percentage, or 0.0 if no students enrolled
+         */
+        public double calculateAverageGrade() {
+            synchronized (rosterLock) {
+                if (gradeColumn.size() == 0) return 0.0;
+                return (gradeSum + gradeSumCompensation) / gradeColumn.size();
+            }
+        }
+    }
+
+    static interface Administrator {
+        void addStudent(String name);
+        void addCourse(String courseName, int maxCapacity);
+        void enrollStudentInCourse(int studentId, int courseId);
+        byte[] enrollStudentsInCourses(int[] studentIds, int[] courseIds);
+        void dropStudentFromCourse(int studentId, int courseId);
+        int getWaitlistPosition(int studentId, int courseId);
+        void updateStudentGrade(int studentId, int courseId, double grade);
+        void displayStudentInfo(int studentId);
+        void displayCourseInfo(int courseId);
+        void displayAllStudents();
+        void displayAllCourses();
+    }
+
+    /**
+     * Map from int IDs to objects for registries whose IDs are handed out sequentially.
+     * Entries live in fixed-size array segments indexed by (id - firstId), so a
+     * lookup is two array reads: no boxed Integer key, no hash node, and about one
+     * reference of memory per entry. Reads take no lock; writes synchronize on the
+     * map and publish new segments through a volatile directory.
+     * @param <T> Type of the stored objects
+     */
+    static class DenseIdMap<T> implements Iterable<T> {
+        private static final int SEGMENT_BITS = 10;
+        private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+        private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+        private final int firstId;
+        // Segment directory; replaced (never modified in place) when it grows
+        private volatile AtomicReferenceArray<T>[] segments;
+        private final AtomicInteger size = new AtomicInteger();
+
+        /**
+         * Creates an empty map
+         * @param firstId Smallest ID that will be stored
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        DenseIdMap(int firstId) {
+            this.firstId = firstId;
+            this.segments = new AtomicReferenceArray[0];
+        }
+
+        /**
+         * Looks up an entry without locking or allocating
+         * @param id The ID to look up; any value is accepted
+         * @return The stored object, or null if there is none
+         */
+        public T get(int id) {
+            long index = (long) id - firstId;
+            if (index < 0) return null;
+            AtomicReferenceArray<T>[] directory = segments;
+            long segment = index >>> SEGMENT_BITS;
+            if (segment >= directory.length || directory[(int) segment] == null) return null;
+            return directory[(int) segment].get((int) index & SEGMENT_MASK);
+        }
+
+        /**
+         * Stores an entry, replacing any existing one with the same ID
+         * @param id The entry's ID
+         * @param value The object to store
+         * @return The previous object for the ID, or null
+         * @throws IllegalArgumentException if id is below the map's first ID
+         */
+        public synchronized T put(int id, T value) {
+            long index = (long) id - firstId;
+            if (index < 0) {
+                throw new IllegalArgumentException("ID " + id + " is below " + firstId);
+            }
+            int segment = (int) (index >>> SEGMENT_BITS);
+            AtomicReferenceArray<T>[] directory = segments;
+            if (segment >= directory.length) {
+                directory = Arrays.copyOf(directory, Math.max(segment + 1, directory.length * 2));
+            }
+            if (directory[segment] == null) {
+                directory = directory == segments ? directory.clone() : directory;
+                directory[segment] = new AtomicReferenceArray<>(SEGMENT_SIZE);
+            }
+            // Publish the grown directory before the entry so readers can always reach it
+            segments = directory;
+            T previous = directory[segment].getAndSet((int) index & SEGMENT_MASK, value);
+            if (previous == null) {
+                size.incrementAndGet();
+            }
+            return previous;
+        }
+
+        // Getter methods for accessing private fields
+        public int size() { return size.get(); }
+
+        /**
+         * Iterates entries in ascending ID order
+         * Entries added while iterating may or may not be seen.
+         */
+        @Override
+        public Iterator<T> iterator() {
+            return iterator(firstId);
+        }
+
+        /**
+         * Iterates entries in ascending ID order, starting at an ID
+         * Lets callers resume a listing from a cursor without walking earlier entries.
+         * @param fromId Smallest ID to return
+         * @return Weakly consistent iterator
+         */
+        public Iterator<T> iterator(int fromId) {
+            AtomicReferenceArray<T>[] directory = segments;
+            long start = Math.max(0L, (long) fromId - firstId);
+            return new Iterator<T>() {
+                private long index = start - 1;
+                private T next = advance();
+
+                private T advance() {
+                    long limit = (long) directory.length << SEGMENT_BITS;
+                    while (++index < limit) {
+                        AtomicReferenceArray<T> segment = directory[(int) (index >>> SEGMENT_BITS)];
+                        if (segment == null) {
+                            index |= SEGMENT_MASK;  // Skip the whole missing segment
+                            continue;
+                        }
+                        T value = segment.get((int) index & SEGMENT_MASK);
+                        if (value != null) return value;
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public T next() {
+                    if (next == null) throw new NoSuchElementException();
+                    T result = next;
+                    next = advance();
+                    return result;
+                }
+            };
+        }
+    }
+
+    /**
+     * Buffered writer for reports, with its own number formatting.
+     * <p>
+     * Rows are encoded straight into a 64 KB byte buffer that is handed to the
+     * underlying stream only when full, so a large report costs a few hundred
+     * stream writes instead of one synchronized printf per row. Integers and
+     * two-decimal values are formatted by hand and give the same text as
+     * printf's %d and %.2f.
+     */
+    static class ReportWriter implements Closeable {
+        private static final int BUFFER_SIZE = 1 << 16;
+        private static final double MAX_FAST_FIXED = 1e15;     // Beyond this, let Formatter handle it
+
+        private final OutputStream out;
+        private final boolean closeTarget;      // false for the console, which must stay open
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+
+        /**
+         * @param out Stream to write to
+         * @param closeTarget Whether close() also closes the stream
+         */
+        ReportWriter(OutputStream out, boolean closeTarget) {
+            this.out = out;
+            this.closeTarget = closeTarget;
+        }
+
+        /**
+         * Creates a writer for the console; close() only flushes it
+         */
+        public static ReportWriter toConsole() {
+            return new ReportWriter(System.out, false);
+        }
+
+        /**
+         * Creates a writer for a file, replacing any existing content
+         * @param file The file to write
+         * @throws IOException if the file cannot be opened
+         */
+        public static ReportWriter toFile(Path file) throws IOException {
+            return new ReportWriter(Files.newOutputStream(file), true);
+        }
+
+        /**
+         * Appends text; non-ASCII characters are written as UTF-8
+         */
+        public ReportWriter text(String value) throws IOException {
+            int length = value.length();
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c >= 0x80) {
+                    // Rare in practice; encode the rest of the string in one go
+                    bytes(value.substring(i).getBytes(StandardCharsets.UTF_8));
+                    return this;
+                }
+                if (position == BUFFER_SIZE) drain();
+                buffer[position++] = (byte) c;
+            }
+            return this;
+        }
+
+        /**
+         * Appends an integer, formatted like %d
+         */
+        public ReportWriter integer(long value) throws IOException {
+            if (position + 20 > BUFFER_SIZE) drain();
+            if (value == Long.MIN_VALUE) {
+                return text(Long.toString(value));
+            }
+            if (value < 0) {
+                buffer[position++] = '-';
+                value = -value;
+            }
+            // Write the digits backwards into place
+            int end = position + digitCount(value);
+            int cursor = end;
+            do {
+                buffer[--cursor] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value != 0);
+            position = end;
+            return this;
+        }
+
+        /**
+         * Appends a value with two decimal places, formatted like %.2f
+         */
+        public ReportWriter fixed2(double value) throws IOException {
+            if (!(Math.abs(value) < MAX_FAST_FIXED)) {
+                return text(String.format("%.2f", value));
+            }
+            double scaled = Math.abs(value) * 100;
+            double floor = Math.floor(scaled);
+            double fraction = scaled - floor;
+            if (Math.abs(fraction - 0.5) < 1e-6) {
+                // Close to a rounding tie: %.2f rounds the shortest decimal form of the
+                // double half-up, which the scaled binary value cannot tell apart here
+                return text(String.format("%.2f", value));
+            }
+            long cents = (long) floor + (fraction > 0.5 ? 1 : 0);
+            if (value < 0 || (value == 0 && 1 / value < 0)) {
+                text("-");
+            }
+            integer(cents / 100);
+            if (position + 3 > BUFFER_SIZE) drain();
+            long remainder = cents % 100;
+            buffer[position++] = '.';
+            buffer[position++] = (byte) ('0' + remainder / 10);
+            buffer[position++] = (byte) ('0' + remainder % 10);
+            return this;
+        }
+
+        /**
+         * Appends a line separator
+         */
+        public ReportWriter newline() throws IOException {
+            return text(System.lineSeparator());
+        }
+
+        /**
+         * Writes buffered output through to the underlying stream
+         */
+        public void flush() throws IOException {
+            drain();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            if (closeTarget) {
+                out.close();
+            }
+        }
+
+        private void bytes(byte[] data) throws IOException {
+            if (data.length > BUFFER_SIZE - position) {
+                drain();
+                if (data.length > BUFFER_SIZE) {
+                    out.write(data);
+                    return;
+                }
+            }
+            System.arraycopy(data, 0, buffer, position, data.length);
+            position += data.length;
+        }
+
+        private void drain() throws IOException {
+            if (position > 0) {
+                out.write(buffer, 0, position);
+                position = 0;
+            }
+        }
+
+        private static int digitCount(long value) {
+            int digits = 1;
+            while (value >= 10) {
+                value /= 10;
+                digits++;
+            }
+            return digits;
+        }
+    }
+
+    /**
+     * Thread-safe implementation of Administrator.
+     * Registries are concurrent maps and each course guards its own roster,
+     * so operations on different courses never wait on each other.
+     * Once enableDurability is called every change is also written to a Journal
+     * and reported only after it is on disk; snapshots keep recovery short.
+     * <p>
+     * A change that cannot be saved is not undone, because later changes may
+     * already build on it. Instead the journal stops accepting records: every
+     * later change is refused before it touches memory, and no snapshot is
+     * written, so the data directory keeps only saved changes. The program must
+     * then be restarted, and recovery brings back the last saved state.
+     */
+    static class CourseManagement implements Administrator {
+        // Journal records written between automatic snapshots
+        static final int SNAPSHOT_INTERVAL = 10_000;
+        private static final int SNAPSHOT_MAGIC = 0x57354153;  // "W5AS"
+        private static final int SNAPSHOT_VERSION = 2;      // 2 added waitlists
+
+        private static volatile CourseManagement instance;  // Singleton instance
+        private DenseIdMap<Student> students;      // Repository of all students, keyed by ID
+        private DenseIdMap<Course> courses;        // Repository of all courses, keyed by ID
+        // With durability on, changes hold the read side while they update memory and
+        // append to the journal; a snapshot holds the write side so it sees no half-logged change
+        private final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
+        private volatile Journal journal;          // null until enableDurability is called
+        private final Object snapshotLock = new Object();
+        private final AtomicBoolean snapshotScheduled = new AtomicBoolean();
+
+        private CourseManagement() {
+            students = new DenseIdMap<>(Student.FIRST_ID);
+            courses = new DenseIdMap<>(Course.FIRST_ID);
+        }
+
+        /**
+         * Returns the single shared instance, creating it on first use
+         * Double-checked locking on a volatile field, so only the first call synchronizes
+         */
+        public static CourseManagement getInstance() {
+            CourseManagement result = instance;
+            if (result == null) {
+                synchronized (CourseManagement.class) {
+                    result = instance;
+                    if (result == null) {
+                        result = new CourseManagement();
+                        instance = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Loads saved state from a data directory and journals every later change there
+         * Recovery reads the latest snapshot and replays only the journal written after it.
+         * Must be called before any other operation.
+         * @param dataDir Directory holding the snapshot and journal files; created if missing
+         * @throws IOException if the directory cannot be used or the saved data is corrupt
+         */
+        public void enableDurability(Path dataDir) throws IOException {
+            if (journal != null) {
+                throw new IllegalStateException("Durability is already enabled");
+            }
+            Files.createDirectories(dataDir);
+            long snapshotLsn = 0;
+            byte[] image = Journal.readSnapshot(dataDir);
+            if (image != null) {
+                snapshotLsn = restoreSnapshot(image);
+            }
+            long lastLsn = Journal.replay(dataDir, snapshotLsn, this::applyRecord);
+            journal = new Journal(dataDir, Math.max(lastLsn, snapshotLsn));
+        }
+
+        /**
+         * Writes a snapshot now and discards the journal files it covers
+         * @throws IOException if the snapshot cannot be written
+         */
+        public void snapshot() throws IOException {
+            Journal current = journal;
+            if (current == null) return;
+            synchronized (snapshotLock) {
+                byte[] image;
+                long lsn;
+                stateLock.writeLock().lock();
+                try {
+                    image = captureSnapshot();
+                    lsn = current.lastLsn();
+                } finally {
+                    stateLock.writeLock().unlock();
+                }
+                // Later records go to a new journal file, so everything older can be dropped
+                current.rotate(lsn);
+                Journal.writeSnapshot(current.directory(), image);
+                current.deleteSegmentsUpTo(lsn);
+            }
+        }
+
+        /**
+         * Writes a final snapshot and stops the journal
+         */
+        public void shutdown() {
+            Journal current = journal;
+            if (current == null) return;
+            try {
+                snapshot();
+            } catch (IOException e) {
+                System.out.println("Could not write snapshot: " + e.getMessage());
+            }
+            current.close();
+            journal = null;
+        }
+
+        /**
+         * Starts a change, taking the read side of stateLock if durability is on
+         * Without a journal there are no snapshots to keep consistent, so no lock is taken.
+         * Pair every call with endChange.
+         * @return The journal to log the change to, or null if durability is off
+         * @throws UncheckedIOException if the journal has failed; nothing was changed
+         */
+        private Journal beginChange() {
+            Journal current = journal;
+            if (current != null) {
+                current.checkUsable();
+                stateLock.readLock().lock();
+            }
+            return current;
+        }
+
+        private void endChange(Journal current) {
+            if (current != null) {
+                stateLock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Waits until a journal record is on disk, printing a message if it never gets there
+         * @param lsn Sequence number returned by the journal, or 0 if nothing was logged
+         * @return true if the change is durable (or durability is off)
+         */
+        private boolean commit(long lsn) {
+            try {
+                awaitCommit(lsn);
+                return true;
+            } catch (UncheckedIOException e) {
+                reportUnsaved(e);
+                return false;
+            }
+        }
+
+        private static void reportUnsaved(UncheckedIOException e) {
+            System.out.println("Change could not be saved: " + e.getCause().getMessage()
+                + ". No further changes will be accepted; restart to recover the last saved state.");
+        }
+
+        /**
+         * Waits until a journal record is on disk
+         * Also starts a background snapshot once enough records have built up.
+         * @param lsn Sequence number returned by the journal, or 0 if nothing was logged
+         * @throws UncheckedIOException if the journal failed before the record was saved
+         */
+        private void awaitCommit(long lsn) {
+            Journal current = journal;
+            if (current == null || lsn == 0) return;
+            current.awaitDurable(lsn);
+            if (current.recordsSinceRotation() >= SNAPSHOT_INTERVAL && snapshotScheduled.compareAndSet(false, true)) {
+                Thread snapshotter = new Thread(() -> {
+                    try {
+                        snapshot();
+                    } catch (IOException e) {
+                        System.out.println("Could not write snapshot: " + e.getMessage());
+                    } finally {
+                        snapshotScheduled.set(false);
+                    }
+                }, "w5a-snapshot");
+                snapshotter.setDaemon(true);
+                snapshotter.start();
+            }
+        }
+
+        @Override
+        public void addStudent(String name) {
+            try {
+                Student student;
+                long lsn = 0;
+                Journal current = beginChange();
+                try {
+                    student = new Student(name);
+                    // Logged before it is published, so no later record can refer to it first
+                    if (current != null) {
+                        lsn = current.logAddStudent(student.getStudentId(), student.getName());
+                    }
+                    students.put(student.getStudentId(), student);
+                } finally {
+                    endChange(current);
+                }
+                if (commit(lsn)) {
+                    System.out.println("Student added successfully. ID: " + student.getStudentId());
+                }
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+            } catch (UncheckedIOException e) {
+                reportUnsaved(e);
+            }
+        }
+
+        @Override
+        public void addCourse(String courseName, int maxCapacity) {
+            try {
+                Course course;
+                long lsn = 0;
+                Journal current = beginChange();
+                try {
+                    course = new Course(courseName, maxCapacity);
+                    if (current != null) {
+                        lsn = current.logAddCourse(course.getCourseId(), course.getCourseName(), maxCapacity);
+                    }
+                    courses.put(course.getCourseId(), course);
+                } finally {
+                    endChange(current);
+                }
+                if (commit(lsn)) {
+                    System.out.println("Course added successfully. ID: " + course.getCourseId());
+                }
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+            } catch (UncheckedIOException e) {
+                reportUnsaved(e);
+            }
+        }
+
+        /**
+         * Enrolls a student and journals the enrollment if it succeeded
+         * With durability on, the course monitor keeps each course's journal records in
+         * the order the changes were applied, so replay reaches the same rosters. Without
+         * a journal the course's own locks are enough and the monitor is skipped.
+         * @param student The student to enroll
+         * @param course The course to enroll in
+         * @param waitIfFull Whether a full course puts the student on its waitlist
+         * @param lsnOut Receives the journal sequence number in element 0, or 0 if nothing was logged
+         * @param positionOut If not null and the student was waitlisted, receives the waitlist
+         *        position in element 0, or -1 if a concurrent drop already moved them on
+         * @return The enrollment result
+         * @throws UncheckedIOException if the journal has failed
+         */
+        private EnrollmentResult enrollLogged(Student student, Course course, boolean waitIfFull,
+                                              long[] lsnOut, int[] positionOut) {
+            Journal current = beginChange();
+            try {
+                if (current == null) {
+                    return enrollUnlogged(student, course, waitIfFull, positionOut);
+                }
+                synchronized (course) {
+                    EnrollmentResult result = enrollUnlogged(student, course, waitIfFull, positionOut);
+                    if (result == EnrollmentResult.ENROLLED || result == EnrollmentResult.WAITLISTED) {
+                        lsnOut[0] = waitIfFull
+                            ? current.logEnrollOrWait(student.getStudentId(), course.getCourseId())
+                            : current.logEnroll(student.getStudentId(), course.getCourseId());
+                    }
+                    return result;
+                }
+            } finally {
+                endChange(current);
+            }
+        }
+
+        private static EnrollmentResult enrollUnlogged(Student student, Course course, boolean waitIfFull,
+                                                       int[] positionOut) {
+            if (!waitIfFull) {
+                return course.tryEnroll(student);
+            }
+            EnrollmentResult result = course.enrollOrWait(student);
+            if (result == EnrollmentResult.WAITLISTED && positionOut != null) {
+                positionOut[0] = course.getWaitlistPosition(student);
+            }
+            return result;
+        }
+
+        @Override
+        public void enrollStudentInCourse(int studentId, int courseId) {
+            Student student = students.get(studentId);
+            Course course = courses.get(courseId);
+            
+            if (student == null || course == null) {
+                System.out.println("Student or course not found!");
+                return;
+            }
+
+            long[] lsn = new long[1];
+            int[] position = new int[1];
+            EnrollmentResult result;
+            try {
+                result = enrollLogged(student, course, true, lsn, position);
+            } catch (UncheckedIOException e) {
+                reportUnsaved(e);
+                return;
+            }
+            if (result == EnrollmentResult.DUPLICATE) {
+                System.out.println("Student is already enrolled in or waiting for this course!");
+            } else if (commit(lsn[0])) {
+                if (result == EnrollmentResult.ENROLLED) {
+                    System.out.println("Enrollment successful!");
+                } else if (position[0] > 0) {
+                    System.out.println("Course is full. Student added to the waitlist at position "
+                        + position[0] + ".");
+                } else {
+                    System.out.println("Course is full. Student added to the waitlist.");
+                }
+            }
+        }
+
+        /**
+         * Enrolls many (student, course) pairs at once without console output.
+         * Pairs are grouped by course and the groups run in parallel; within a
+         * course, pairs are tried in input order, so when seats run out the
+         * earlier requests are the ones that get them. A batch never joins a
+         * waitlist: once a course is full its remaining pairs report FULL, and
+         * callers that want those students in line enroll them one at a time.
+         * @param studentIds Student ID of each pair
+         * @param courseIds Course ID of each pair, same length as studentIds
+         * @return One EnrollmentResult code per pair, in input order
+         * @throws IllegalArgumentException if the arrays differ in length
+         * @throws UncheckedIOException if durability is on and the batch could not be saved;
+         *         see the class comment for what happens to the changes already made
+         */
+        @Override
+        public byte[] enrollStudentsInCourses(int[] studentIds, int[] courseIds) {
+            if (studentIds.length != courseIds.length) {
+                throw new IllegalArgumentException("Student and course ID lists must have the same length");
+            }
+            int n = courseIds.length;
+            byte[] results = new byte[n];
+
+            // Counting pass: number of pairs per course, in first-seen order
+            Map<Integer, int[]> groupSizes = new LinkedHashMap<>();
+            for (int courseId : courseIds) {
+                groupSizes.computeIfAbsent(courseId, id -> new int[1])[0]++;
+            }
+
+            // Turn counts into start offsets, then place each pair index in its group (stable)
+            List<CourseGroupTask> tasks = new ArrayList<>(groupSizes.size());
+            int[] order = new int[n];
+            int offset = 0;
+            for (Map.Entry<Integer, int[]> entry : groupSizes.entrySet()) {
+                int size = entry.getValue()[0];
+                Course course = courses.get(entry.getKey());
+                tasks.add(new CourseGroupTask(this, course, studentIds, order, offset, offset + size, results));
+                entry.getValue()[0] = offset;
+                offset += size;
+            }
+            for (int i = 0; i < n; i++) {
+                order[groupSizes.get(courseIds[i])[0]++] = i;
+            }
+
+            ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+            // One wait covers the whole batch; the journal flushes it in as few syncs as it can
+            long lastLsn = 0;
+            for (CourseGroupTask task : tasks) {
+                lastLsn = Math.max(lastLsn, task.lastLsn);
+            }
+            awaitCommit(lastLsn);
+            return results;
+        }
+
+        /**
+         * Enrolls one course's share of a batch, writing results to disjoint slots
+         */
+        private static class CourseGroupTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+            private final CourseManagement owner;
+            private final Course course;        // null if the course does not exist
+            private final int[] studentIds;
+            private final int[] order;          // Pair indices grouped by course
+            private final int from;
+            private final int to;
+            private final byte[] results;
+            long lastLsn;                       // Highest journal record written by this group
+
+            CourseGroupTask(CourseManagement owner, Course course, int[] studentIds,
+                            int[] order, int from, int to, byte[] results) {
+                this.owner = owner;
+                this.course = course;
+                this.studentIds = studentIds;
+                this.order = order;
+                this.from = from;
+                this.to = to;
+                this.results = results;
+            }
+
+            @Override
+            protected void compute() {
+                long[] lsn = new long[1];
+                for (int k = from; k < to; k++) {
+                    int pair = order[k];
+                    Student student = owner.students.get(studentIds[pair]);
+                    EnrollmentResult result = (course == null || student == null)
+                        ? EnrollmentResult.NOT_FOUND
+                        : owner.enrollLogged(student, course, false, lsn, null);
+                    results[pair] = result.code();
+                }
+                lastLsn = lsn[0];
+            }
+        }
+
+        /**
+         * Looks up a student's place on a course's waitlist
+         * @return 1 for next in line, or -1 if the student, course or entry does not exist
+         */
+        @Override
+        public int getWaitlistPosition(int studentId, int courseId) {
+            Student student = students.get(studentId);
+            Course course = courses.get(courseId);
+            return (student == null || course == null) ? -1 : course.getWaitlistPosition(student);
+        }
+
+        @Override
+        public void dropStudentFromCourse(int studentId, int courseId) {
+            Student student = students.get(studentId);
+            Course course = courses.get(courseId);
+
+            if (student == null || course == null) {
+                System.out.println("Student or course not found!");
+                return;
+            }
+
+            // Decides the message only; the drop itself handles either case under the roster lock
+            boolean waiting = student.slotIn(course) < 0;
+            boolean dropped;
+            long lsn = 0;
+            try {
+                Journal current = beginChange();
+                try {
+                    if (current == null) {
+                        // Nothing to log, and the roster lock alone keeps the drop atomic
+                        dropped = course.dropStudent(student);
+                    } else {
+                        // The course monitor keeps this course's records in the order they were applied
+                        synchronized (course) {
+                            dropped = course.dropStudent(student);
+                            if (dropped) {
+                                lsn = current.logDrop(studentId, courseId);
+                            }
+                        }
+                    }
+                } finally {
+                    endChange(current);
+                }
+            } catch (UncheckedIOException e) {
+                reportUnsaved(e);
+                return;
+            }
+
+            if (dropped) {
+                if (commit(lsn)) {
+                    System.out.println(waiting ? "Student removed from the waitlist." : "Student dropped from course.");
+                }
+            } else {
+                System.out.println("Student is not enrolled in or waiting for this course!");
+            }
+        }
+
+        @Override
+        public void updateStudentGrade(int studentId, int courseId, double grade) {
+            Student student = students.get(studentId);
+            Course course = courses.get(courseId);
+            
+            if (student == null || course == null) {
+                System.out.println("Student or course not found!");
+                return;
+            }
+
+            try {
+                boolean updated;
+                long lsn = 0;
+                Journal current = beginChange();
+                try {
+                    if (current == null) {
+                        updated = student.updateGrade(course, grade);
+                    } else {
+                        synchronized (course) {
+                            updated = student.updateGrade(course, grade);
+                            if (updated) {
+                                lsn = current.logGrade(studentId, courseId, grade);
+                            }
+                        }
+                    }
+                } finally {
+                    endChange(current);
+                }
+                if (!updated) {
+                    System.out.println("Student is not enrolled in this course!");
+                } else if (commit(lsn)) {
+                    System.out.println("Grade updated successfully!");
+                }
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+            } catch (UncheckedIOException e) {
+                reportUnsaved(e);
+            }
+        }
+
+        @Override
+        public void displayStudentInfo(int studentId) {
+            Student student = students.get(studentId);
+            if (student == null) {
+                System.out.println("Student not found!");
+                return;
+            }
+
+            try {
+                ReportWriter out = ReportWriter.toConsole();
+                out.newline().text("Student Information:").newline();
+                out.text("ID: ").integer(student.getStudentId()).newline();
+                out.text("Name: ").text(student.getName()).newline();
+                out.text("Enrolled Courses and Grades:").newline();
+                for (Course course : student.getEnrolledCourses()) {
+                    out.text(course.getCourseName()).text(" (ID: ").integer(course.getCourseId())
+                        .text("): ").fixed2(student.getGrade(course)).text("%").newline();
+                }
+                out.flush();
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+
+        @Override
+        public void displayCourseInfo(int courseId) {
+            Course course = courses.get(courseId);
+            if (course == null) {
+                System.out.println("Course not found!");
+                return;
+            }
+
+            try {
+                ReportWriter out = ReportWriter.toConsole();
+                out.newline().text("Course Information:").newline();
+                out.text("ID: ").integer(course.getCourseId()).newline();
+                out.text("Name: ").text(course.getCourseName()).newline();
+                out.text("Average Grade: ").fixed2(course.calculateAverageGrade()).text("%").newline();
+                out.text("Waitlist: ").integer(course.getWaitlistSize()).newline();
+                out.text("Enrolled Students:").newline();
+                GradeColumn roster = course.snapshotRoster();
+                for (int i = 0; i < roster.size(); i++) {
+                    out.text(roster.studentAt(i).getName()).text(" (ID: ").integer(roster.studentAt(i).getStudentId())
+                        .text("): ").fixed2(roster.gradeAt(i)).text("%").newline();
+                }
+                out.flush();
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+
+        @Override
+        public void displayAllStudents() {
+            try {
+                ReportWriter out = ReportWriter.toConsole();
+                out.newline().text("All Students:").newline();
+                renderStudents(out, Student.FIRST_ID - 1, Integer.MAX_VALUE);
+                out.flush();
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+
+        @Override
+        public void displayAllCourses() {
+            try {
+                ReportWriter out = ReportWriter.toConsole();
+                out.newline().text("All Courses:").newline();
+                renderCourses(out, Course.FIRST_ID - 1, Integer.MAX_VALUE);
+                out.flush();
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+
+        /**
+         * Writes one page of the student listing
+         * The returned cursor is passed back in to get the next page, so pages stay
+         * correct even if students are added in between.
+         * @param out Where to write the rows
+         * @param afterId Cursor: only students with a larger ID are listed
+         * @param limit Maximum number of rows to write
+         * @return Cursor for the next page, or -1 if no students remain
+         * @throws IOException if writing fails
+         */
+        public int renderStudents(ReportWriter out, int afterId, int limit) throws IOException {
+            Iterator<Student> rows = students.iterator(afterId + 1);
+            for (int written = 0; written < limit && rows.hasNext(); written++) {
+                Student student = rows.next();
+                out.text("ID: ").integer(student.getStudentId())
+                    .text(", Name: ").text(student.getName()).newline();
+                afterId = student.getStudentId();
+            }
+            return rows.hasNext() ? afterId : -1;
+        }
+
+        /**
+         * Writes one page of the course listing
+         * @param out Where to write the rows
+         * @param afterId Cursor: only courses with a larger ID are listed
+         * @param limit Maximum number of rows to write
+         * @return Cursor for the next page, or -1 if no courses remain
+         * @throws IOException if writing fails
+         */
+        public int renderCourses(ReportWriter out, int afterId, int limit) throws IOException {
+            Iterator<Course> rows = courses.iterator(afterId + 1);
+            for (int written = 0; written < limit && rows.hasNext(); written++) {
+                Course course = rows.next();
+                out.text("ID: ").integer(course.getCourseId())
+                    .text(", Name: ").text(course.getCourseName())
+                    .text(", Average Grade: ").fixed2(course.calculateAverageGrade()).text("%").newline();
+                afterId = course.getCourseId();
+            }
+            return rows.hasNext() ? afterId : -1;
+        }
+
+        /**
+         * Serialises all students, courses, rosters and grades
+         * Caller holds the write side of stateLock.
+         * @return Snapshot body without its checksum
+         */
+        private byte[] captureSnapshot() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeLong(journal.lastLsn());
+                out.writeInt(Student.peekNextId());
+                out.writeInt(Course.peekNextId());
+                out.writeInt(students.size());
+                for (Student student : students) {
+                    out.writeInt(student.getStudentId());
+                    out.writeUTF(student.getName());
+                }
+                out.writeInt(courses.size());
+                for (Course course : courses) {
+                    out.writeInt(course.getCourseId());
+                    out.writeUTF(course.getCourseName());
+                    out.writeInt(course.getMaxCapacity());
+                    GradeColumn roster = course.snapshotRoster();
+                    out.writeInt(roster.size());
+                    for (int i = 0; i < roster.size(); i++) {
+                        out.writeInt(roster.studentAt(i).getStudentId());
+                        out.writeDouble(roster.gradeAt(i));
+                    }
+                    List<Student> waiting = course.getWaitlistedStudents();
+                    out.writeInt(waiting.size());
+                    for (Student student : waiting) {
+                        out.writeInt(student.getStudentId());
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);  // In-memory stream; cannot happen
+            }
+            return bytes.toByteArray();
+        }
+
+        /**
+         * Rebuilds the registries from a snapshot body
+         * @param image Snapshot body as written by captureSnapshot
+         * @return Journal sequence number the snapshot includes
+         * @throws IOException if the snapshot is malformed
+         */
+        private long restoreSnapshot(byte[] image) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(image));
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Unrecognised snapshot format");
+            }
+            int version = in.readInt();
+            if (version < 1 || version > SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            long lsn = in.readLong();
+            int nextStudent = in.readInt();
+            int nextCourse = in.readInt();
+            int studentCount = in.readInt();
+            for (int i = 0; i < studentCount; i++) {
+                Student student = new Student(in.readInt(), in.readUTF());
+                students.put(student.getStudentId(), student);
+            }
+            int courseCount = in.readInt();
+            for (int i = 0; i < courseCount; i++) {
+                Course course = new Course(in.readInt(), in.readUTF(), in.readInt());
+                courses.put(course.getCourseId(), course);
+                int rosterSize = in.readInt();
+                for (int j = 0; j < rosterSize; j++) {
+                    Student student = requireStudent(in.readInt());
+                    double grade = in.readDouble();
+                    course.tryEnroll(student);
+                    student.updateGrade(course, grade);
+                }
+                int waitingCount = version >= 2 ? in.readInt() : 0;
+                for (int j = 0; j < waitingCount; j++) {
+                    course.enrollOrWait(requireStudent(in.readInt()));
+                }
+            }
+            Student.advanceNextId(nextStudent);
+            Course.advanceNextId(nextCourse);
+            return lsn;
+        }
+
+        /**
+         * Re-applies one journal record during recovery
+         * @param type Record type, one of the Journal constants
+         * @param in Record fields
+         * @throws IOException if the record is malformed or refers to unknown IDs
+         */
+        private void applyRecord(byte type, DataInput in) throws IOException {
+            switch (type) {
+                case Journal.ADD_STUDENT: {
+                    Student student = new Student(in.readInt(), in.readUTF());
+                    students.put(student.getStudentId(), student);
+                    break;
+                }
+                case Journal.ADD_COURSE: {
+                    Course course = new Course(in.readInt(), in.readUTF(), in.readInt());
+                    courses.put(course.getCourseId(), course);
+                    break;
+                }
+                case Journal.ENROLL: {
+                    Student student = requireStudent(in.readInt());
+                    requireCourse(in.readInt()).tryEnroll(student);
+                    break;
+                }
+                case Journal.ENROLL_OR_WAIT: {
+                    Student student = requireStudent(in.readInt());
+                    requireCourse(in.readInt()).enrollOrWait(student);
+                    break;
+                }
+                case Journal.DROP: {
+                    Student student = requireStudent(in.readInt());
+                    requireCourse(in.readInt()).dropStudent(student);
+                    break;
+                }
+                case Journal.GRADE: {
+                    Student student = requireStudent(in.readInt());
+                    Course course = requireCourse(in.readInt());
+                    student.updateGrade(course, in.readDouble());
+                    break;
+                }
+                default:
+                    throw new IOException("Unknown journal record type " + type);
+            }
+        }
+
+        private Student requireStudent(int studentId) throws IOException {
+            Student student = students.get(studentId);
+            if (student == null) {
+                throw new IOException("Saved data refers to unknown student " + studentId);
+            }
+            return student;
+        }
+
+        private Course requireCourse(int courseId) throws IOException {
+            Course course = courses.get(courseId);
+            if (course == null) {
+                throw new IOException("Saved data refers to unknown course " + courseId);
+            }
+            return course;
+        }
+    }
+
+    /**
+     * Append-only write-ahead log of administrator changes, with group commit.
+     * <p>
+     * Callers append records to an in-memory buffer and get back a sequence number
+     * (LSN); a single flusher thread writes whatever has built up and syncs it with
+     * one force() call, so concurrent changes share the cost of each sync. Records
+     * are framed as length, CRC32 and payload, and a torn record at the end of the
+     * last file (from a crash mid-write) is cut off during replay.
+     * <p>
+     * The log is split into segment files named after their first LSN. Taking a
+     * snapshot rotates to a new segment, after which the older ones can be deleted,
+     * so recovery only ever replays the changes made since the last snapshot.
+     */
+    static class Journal {
+        static final byte ADD_STUDENT = 1;
+        static final byte ADD_COURSE = 2;
+        static final byte ENROLL = 3;
+        static final byte DROP = 4;
+        static final byte GRADE = 5;
+        static final byte ENROLL_OR_WAIT = 6;
+
+        private static final String SEGMENT_PREFIX = "wal-";
+        private static final String SEGMENT_SUFFIX = ".log";
+        private static final String SNAPSHOT_FILE = "snapshot.bin";
+        private static final int MAX_RECORD_LENGTH = 1 << 20;
+
+        /**
+         * Receives each record during replay
+         */
+        interface RecordHandler {
+            void apply(byte type, DataInput in) throws IOException;
+        }
+
+        /**
+         * Writes one record's fields after the common header
+         */
+        private interface RecordBody {
+            void write(DataOutputStream out) throws IOException;
+        }
+
+        private final Path directory;
+        private final Object bufferLock = new Object();
+        // Encoded records waiting for the flusher; guarded by bufferLock
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private final DataOutputStream pendingOut = new DataOutputStream(pending);
+        private final ByteArrayOutputStream scratch = new ByteArrayOutputStream();
+        private final DataOutputStream scratchOut = new DataOutputStream(scratch);
+        private final CRC32 crc = new CRC32();
+        private final Thread flusher;
+        private FileChannel channel;        // Current segment; only the flusher writes to it
+        private long lastLsn;               // Last LSN handed out
+        private long durableLsn;            // Last LSN known to be on disk
+        private long segmentStartLsn;       // First LSN of the current segment
+        private long rotateAfterLsn = -1;   // Pending rotation request, or -1
+        private IOException failure;        // Set once a write fails; the journal is then unusable
+        private boolean closed;
+
+        /**
+         * Opens a new segment for records after lastLsn and starts the flusher
+         * @param directory Data directory
+         * @param lastLsn Last LSN already recovered
+         * @throws IOException if the segment cannot be created
+         */
+        Journal(Path directory, long lastLsn) throws IOException {
+            this.directory = directory;
+            this.lastLsn = lastLsn;
+            this.durableLsn = lastLsn;
+            this.segmentStartLsn = lastLsn + 1;
+            this.channel = openSegment(segmentStartLsn);
+            this.flusher = new Thread(this::flushLoop, "w5a-journal");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+
+        // Getter methods for accessing private fields
+        Path directory() { return directory; }
+        long lastLsn() { synchronized (bufferLock) { return lastLsn; } }
+        long recordsSinceRotation() { synchronized (bufferLock) { return lastLsn - segmentStartLsn + 1; } }
+
+        long logAddStudent(int studentId, String name) {
+            return append(ADD_STUDENT, out -> { out.writeInt(studentId); out.writeUTF(name); });
+        }
+
+        long logAddCourse(int courseId, String name, int maxCapacity) {
+            return append(ADD_COURSE, out -> { out.writeInt(courseId); out.writeUTF(name); out.writeInt(maxCapacity); });
+        }
+
+        long logEnroll(int studentId, int courseId) {
+            return append(ENROLL, out -> { out.writeInt(studentId); out.writeInt(courseId); });
+        }
+
+        long logEnrollOrWait(int studentId, int courseId) {
+            return append(ENROLL_OR_WAIT, out -> { out.writeInt(studentId); out.writeInt(courseId); });
+        }
+
+        long logDrop(int studentId, int courseId) {
+            return append(DROP, out -> { out.writeInt(studentId); out.writeInt(courseId); });
+        }
+
+        long logGrade(int studentId, int courseId, double grade) {
+            return append(GRADE, out -> { out.writeInt(studentId); out.writeInt(courseId); out.writeDouble(grade); });
+        }
+
+        /**
+         * Checks that the journal still accepts records
+         * @throws UncheckedIOException if a write has failed or the journal is closed
+         */
+        void checkUsable() {
+            synchronized (bufferLock) {
+                if (failure != null || closed) {
+                    throw unusable();
+                }
+            }
+        }
+
+        // Caller holds bufferLock
+        private UncheckedIOException unusable() {
+            return new UncheckedIOException(failure != null ? failure : new IOException("Journal is closed"));
+        }
+
+        /**
+         * Encodes a record into the pending buffer
+         * Never blocks on I/O; use awaitDurable to wait for the record to reach disk.
+         * @param type Record type
+         * @param body Writes the record's fields
+         * @return The record's LSN
+         * @throws UncheckedIOException if a write has failed or the journal is closed;
+         *         nothing is buffered, since the flusher would never write it
+         */
+        private long append(byte type, RecordBody body) {
+            synchronized (bufferLock) {
+                if (failure != null || closed) {
+                    throw unusable();
+                }
+                long lsn = ++lastLsn;
+                try {
+                    scratch.reset();
+                    scratchOut.writeLong(lsn);
+                    scratchOut.writeByte(type);
+                    body.write(scratchOut);
+                    byte[] payload = scratch.toByteArray();
+                    crc.reset();
+                    crc.update(payload, 0, payload.length);
+                    pendingOut.writeInt(payload.length);
+                    pendingOut.writeInt((int) crc.getValue());
+                    pendingOut.write(payload);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);  // In-memory streams; cannot happen
+                }
+                bufferLock.notifyAll();
+                return lsn;
+            }
+        }
+
+        /**
+         * Blocks until the record with the given LSN has been synced to disk
+         * @param lsn LSN returned by one of the log methods
+         * @throws UncheckedIOException if the journal failed or was closed first
+         */
+        void awaitDurable(long lsn) {
+            synchronized (bufferLock) {
+                boolean interrupted = false;
+                while (durableLsn < lsn && failure == null && !closed) {
+                    try {
+                        bufferLock.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                if (durableLsn < lsn) {
+                    throw unusable();
+                }
+            }
+        }
+
+        /**
+         * Makes records after lsn go to a new segment and waits until they do
+         * Records up to lsn are synced into the current segment first.
+         * @param lsn Last LSN that belongs in the old segments
+         * @throws IOException if the journal has failed
+         */
+        void rotate(long lsn) throws IOException {
+            synchronized (bufferLock) {
+                rotateAfterLsn = lsn;
+                bufferLock.notifyAll();
+                boolean interrupted = false;
+                while (segmentStartLsn <= lsn && failure == null && !closed) {
+                    try {
+                        bufferLock.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                if (segmentStartLsn <= lsn) {
+                    throw failure != null ? failure : new IOException("Journal is closed");
+                }
+            }
+        }
+
+        /**
+         * Deletes segments whose records are all covered by a snapshot
+         * @param lsn Last LSN included in the snapshot
+         * @throws IOException if the directory cannot be listed
+         */
+        void deleteSegmentsUpTo(long lsn) throws IOException {
+            List<Long> starts = segmentStarts(directory);
+            for (int i = 0; i + 1 < starts.size(); i++) {
+                // A segment ends just before the next one starts
+                if (starts.get(i + 1) - 1 <= lsn) {
+                    Files.deleteIfExists(segmentPath(directory, starts.get(i)));
+                }
+            }
+        }
+
+        /**
+         * Writes out everything still pending and stops the flusher
+         */
+        void close() {
+            synchronized (bufferLock) {
+                closed = true;
+                bufferLock.notifyAll();
+            }
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Flusher thread: drains the pending buffer, writes it and syncs once per batch
+         */
+        private void flushLoop() {
+            while (true) {
+                byte[] batch;
+                long batchLsn;
+                boolean rotateNow;
+                synchronized (bufferLock) {
+                    while (pending.size() == 0 && rotateAfterLsn < 0 && !closed) {
+                        try {
+                            bufferLock.wait();
+                        } catch (InterruptedException e) {
+                            // Only close() stops the flusher
+                        }
+                    }
+                    if (pending.size() == 0 && rotateAfterLsn < 0) {
+                        break;  // Closed and fully drained
+                    }
+                    batch = pending.toByteArray();
+                    pending.reset();
+                    batchLsn = lastLsn;
+                    // The rotation point is never ahead of the records already handed out,
+                    // so this whole batch still belongs to the current segment
+                    rotateNow = rotateAfterLsn >= 0;
+                    rotateAfterLsn = -1;
+                }
+                try {
+                    ByteBuffer buffer = ByteBuffer.wrap(batch);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(false);
+                    if (rotateNow) {
+                        channel.close();
+                        channel = openSegment(batchLsn + 1);
+                    }
+                } catch (IOException e) {
+                    synchronized (bufferLock) {
+                        failure = e;
+                        bufferLock.notifyAll();
+                    }
+                    break;
+                }
+                synchronized (bufferLock) {
+                    durableLsn = batchLsn;
+                    if (rotateNow) {
+                        segmentStartLsn = batchLsn + 1;
+                    }
+                    bufferLock.notifyAll();
+                }
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Everything acknowledged has already been forced to disk
+            }
+        }
+
+        private FileChannel openSegment(long startLsn) throws IOException {
+            FileChannel segment = FileChannel.open(segmentPath(directory, startLsn),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            syncDirectory(directory);
+            return segment;
+        }
+
+        /**
+         * Replays the journal segments in LSN order
+         * A torn or corrupt record ends replay; the last segment is truncated there so
+         * it can be appended to cleanly, while damage in an earlier segment is an error.
+         * @param directory Data directory
+         * @param afterLsn Records up to and including this LSN are skipped (already in the snapshot)
+         * @param handler Receives each record to apply
+         * @return The last LSN seen, or afterLsn if there were no newer records
+         * @throws IOException if a segment cannot be read or is corrupt before its end
+         */
+        static long replay(Path directory, long afterLsn, RecordHandler handler) throws IOException {
+            long lastLsn = afterLsn;
+            List<Long> starts = segmentStarts(directory);
+            for (int i = 0; i < starts.size(); i++) {
+                Path segment = segmentPath(directory, starts.get(i));
+                boolean lastSegment = i == starts.size() - 1;
+                long validLength = 0;
+                CRC32 checksum = new CRC32();
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+                    while (true) {
+                        int length;
+                        try {
+                            length = in.readInt();
+                        } catch (EOFException e) {
+                            break;
+                        }
+                        if (length < 9 || length > MAX_RECORD_LENGTH) break;
+                        byte[] payload = new byte[length];
+                        int stored;
+                        try {
+                            stored = in.readInt();
+                            in.readFully(payload);
+                        } catch (EOFException e) {
+                            break;
+                        }
+                        checksum.reset();
+                        checksum.update(payload, 0, length);
+                        if ((int) checksum.getValue() != stored) break;
+
+                        DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                        long lsn = record.readLong();
+                        byte type = record.readByte();
+                        if (lsn > lastLsn) {
+                            handler.apply(type, record);
+                            lastLsn = lsn;
+                        }
+                        validLength += 8 + length;
+                    }
+                }
+                long size = Files.size(segment);
+                if (validLength < size) {
+                    if (!lastSegment) {
+                        throw new IOException("Journal segment " + segment.getFileName() + " is corrupt");
+                    }
+                    // Drop the torn tail left by a crash mid-write
+                    try (FileChannel truncate = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                        truncate.truncate(validLength);
+                        truncate.force(true);
+                    }
+                }
+            }
+            return lastLsn;
+        }
+
+        /**
+         * Writes a snapshot atomically: temporary file, sync, then rename over the old one
+         * @param directory Data directory
+         * @param image Snapshot body; a CRC32 is appended
+         * @throws IOException if the snapshot cannot be written
+         */
+        static void writeSnapshot(Path directory, byte[] image) throws IOException {
+            Path temp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+            CRC32 checksum = new CRC32();
+            checksum.update(image, 0, image.length);
+            ByteBuffer buffer = ByteBuffer.allocate(image.length + 4);
+            buffer.put(image).putInt((int) checksum.getValue()).flip();
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                out.force(true);
+            }
+            Files.move(temp, directory.resolve(SNAPSHOT_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(directory);
+        }
+
+        /**
+         * Reads and verifies the snapshot, if there is one
+         * @param directory Data directory
+         * @return Snapshot body without its checksum, or null if no snapshot exists
+         * @throws IOException if the snapshot is unreadable or fails its checksum
+         */
+        static byte[] readSnapshot(Path directory) throws IOException {
+            Path file = directory.resolve(SNAPSHOT_FILE);
+            if (!Files.exists(file)) return null;
+            byte[] data = Files.readAllBytes(file);
+            if (data.length < 4) {
+                throw new IOException("Snapshot is truncated");
+            }
+            int bodyLength = data.length - 4;
+            CRC32 checksum = new CRC32();
+            checksum.update(data, 0, bodyLength);
+            if ((int) checksum.getValue() != ByteBuffer.wrap(data, bodyLength, 4).getInt()) {
+                throw new IOException("Snapshot failed its checksum");
+            }
+            return Arrays.copyOf(data, bodyLength);
+        }
+
+        private static Path segmentPath(Path directory, long startLsn) {
+            return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, startLsn, SEGMENT_SUFFIX));
+        }
+
+        /**
+         * Lists segment start LSNs in ascending order
+         */
+        private static List<Long> segmentStarts(Path directory) throws IOException {
+            List<Long> starts = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+                for (Path entry : entries) {
+                    String name = entry.getFileName().toString();
+                    starts.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                }
+            }
+            Collections.sort(starts);
+            return starts;
+        }
+
+        /**
+         * Syncs a directory so newly created or renamed files survive a crash
+         * Not every platform allows opening a directory; there it is skipped.
+         */
+        private static void syncDirectory(Path directory) {
+            try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+                dir.force(true);
+            } catch (IOException e) {
+                // Best effort only
+            }
+        }
+    }
+
+    /**
+     * Measures how enrollment cost changes as a course fills up.
+     * Run with --bench-enroll. For each roster size a fresh course is filled to
+     * capacity and the time per enrollment is reported both for the whole fill
+     * and for the last tenth of it, where the roster is largest. With a hashed
+     * roster the two figures should stay flat as the size grows.
+     */
+    static class EnrollmentBenchmark {
+        private static final int[] ROSTER_SIZES = {500, 5_000, 50_000, 500_000};
+        private static final int WARMUP_ROUNDS = 3;
+        private static final int MEASURED_ROUNDS = 5;
+
+        /**
+         * Runs the benchmark for every roster size and prints one line per size
+         */
+        public static void run() {
+            System.out.printf("%-10s %16s %20s%n", "Roster", "ns/enroll (all)", "ns/enroll (last 10%)");
+            for (int size : ROSTER_SIZES) {
+                Student[] students = new Student[size];
+                for (int i = 0; i < size; i++) {
+                    students[i] = new Student("Student " + i);
+                }
+                for (int round = 0; round < WARMUP_ROUNDS; round++) {
+                    fill(students);
+                }
+                // Keep the best round of each figure to filter out GC and scheduling noise
+                long bestTotal = Long.MAX_VALUE;
+                long bestTail = Long.MAX_VALUE;
+                for (int round = 0; round < MEASURED_ROUNDS; round++) {
+                    long[] timings = fill(students);
+                    bestTotal = Math.min(bestTotal, timings[0]);
+                    bestTail = Math.min(bestTail, timings[1]);
+                }
+                int tailCount = size - size * 9 / 10;
+                System.out.printf("%-10d %16.1f %20.1f%n",
+                    size, (double) bestTotal / size, (double) bestTail / tailCount);
+            }
+        }
+
+        /**
+         * Enrolls every student into a new course sized to hold them all
+         * @param students The students to enroll
+         * @return Nanoseconds for the whole fill and for its last tenth
          */
-        public void enrollCourse(Course course) {
-            enrolledCourses.put(course, 0.0);
+        private static long[] fill(Student[] students) {
+            Course course = new Course("Benchmark", students.length);
+            int tailStart = students.length * 9 / 10;
+            long start = System.nanoTime();
+            long tailStartTime = start;
+            for (int i = 0; i < students.length; i++) {
+                if (i == tailStart) {
+                    tailStartTime = System.nanoTime();
+                }
+                if (!course.enrollStudent(students[i])) {
+                    throw new IllegalStateException("Enrollment rejected during benchmark");
+                }
+            }
+            long end = System.nanoTime();
+            // Leave the students as they were so the next round starts from the same state
+            for (Student student : students) {
+                student.removeEnrollment(course);
+            }
+            return new long[] {end - start, end - tailStartTime};
         }
+    }
+
+    /**
+     * Log-linear latency histogram, in the style of HdrHistogram.
+     * Values below 128 get their own bucket; above that each power of two is split
+     * into 64 buckets, so any recorded value is known to within about 1.6%.
+     * Recording is a single atomic increment and safe from any thread.
+     */
+    static class LatencyHistogram {
+        private static final int SUB_BUCKET_BITS = 6;
+        private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;   // Buckets per power of two
+        private static final int BUCKET_COUNT = 58 * SUB_BUCKET_COUNT;      // Covers every non-negative long
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
 
         /**
-         * Updates the student's grade for a specific course
-         * @param course The course to update the grade for
-         * @param grade The new grade (percentage)
-         * @throws IllegalArgumentException if grade is not between 0 and 100
+         * Records one value
+         * @param value The value, e.g. a latency in nanoseconds; negatives count as 0
          */
-        public void updateGrade(Course course, double grade) {
-            if (grade < 0 || grade > 100) {
-                throw new IllegalArgumentException("Grade must be between 0 and 100");
-            }
-            if (enrolledCourses.containsKey(course)) {
-                enrolledCourses.put(course, grade);
+        public void record(long value) {
+            counts.incrementAndGet(bucketOf(Math.max(0, value)));
+        }
+
+        /**
+         * Adds another histogram's counts to this one
+         */
+        public void add(LatencyHistogram other) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                long count = other.counts.get(i);
+                if (count != 0) counts.addAndGet(i, count);
             }
         }
 
+        // Total number of recorded values
+        public long count() {
+            long total = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) total += counts.get(i);
+            return total;
+        }
+
         /**
-         * Retrieves the student's grade for a specific course
-         * @param course The course to get the grade for
-         * @return The grade as a percentage, or 0.0 if not enrolled
+         * Returns the value at a percentile
+         * @param percentile Between 0 and 100
+         * @return The largest value in the bucket holding that percentile, or 0 if empty
          */
-        public double getGrade(Course course) {
-            return enrolledCourses.getOrDefault(course, 0.0);
+        public long valueAt(double percentile) {
+            long total = count();
+            if (total == 0) return 0;
+            long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += counts.get(i);
+                if (seen >= target) return highestValueIn(i);
+            }
+            return highestValueIn(BUCKET_COUNT - 1);
+        }
+
+        // Largest recorded value, to bucket precision
+        public long max() {
+            for (int i = BUCKET_COUNT - 1; i >= 0; i--) {
+                if (counts.get(i) != 0) return highestValueIn(i);
+            }
+            return 0;
+        }
+
+        private static int bucketOf(long value) {
+            if (value < 2 * SUB_BUCKET_COUNT) return (int) value;
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+            return (shift + 1) * SUB_BUCKET_COUNT + (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        }
+
+        private static long highestValueIn(int bucket) {
+            if (bucket < 2 * SUB_BUCKET_COUNT) return bucket;
+            int shift = bucket / SUB_BUCKET_COUNT - 1;
+            long low = (long) (bucket % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT) << shift;
+            return low + (1L << shift) - 1;
         }
     }
 
-    static class Course {
-        // Move Course class implementation here, making it static
-        // Add 'static' to the class declaration and keep all the existing code
-        private static int nextCourseId = 100;
-        private int courseId;           // Unique identifier for each course
-        private String courseName;      // Name of the course
-        private int maxCapacity;        // Maximum number of students allowed
-        private List<Student> enrolledStudents;  // List of currently enrolled students
+    /**
+     * Simulates a registration-opening storm against the Administrator interface.
+     * <p>
+     * Run with --load-test [key=value ...]; keys are students, courses, capacity,
+     * rate (total operations per second), seconds and mix (percent of enroll,
+     * grade update, display and drop, e.g. mix=70,20,8,2).
+     * <p>
+     * Every simulated student issues requests as a Poisson process, so the total
+     * arrival rate is fixed no matter how fast the system answers. Latency is
+     * measured from when a request was due rather than when it was sent, so a
+     * stall shows up in the percentiles instead of quietly lowering the load.
+     * Each student runs on its own virtual thread where the JDK has them (21+);
+     * otherwise students are shared out over a pool of platform threads.
+     * Console output from the system under test is discarded during the run.
+     * Combined with --data-dir the directory must be empty or new, because the
+     * generated students, courses and enrollments are saved there.
+     */
+    static class LoadGenerator {
+        private static final String[] OPERATIONS = {"enroll", "grade", "display", "drop"};
+        private static final int PLATFORM_WORKERS_PER_CPU = 8;
+
+        private int studentCount = 10_000;
+        private int courseCount = 50;
+        private int capacity = 150;
+        private double rate = 20_000;
+        private int seconds = 10;
+        private int[] mix = {70, 20, 8, 2};
 
         /**
-         * Creates a new Course with an auto-generated ID and specified capacity
-         * @param courseName The name of the course
-         * @param maxCapacity Maximum number of students that can enroll
-         * @throws IllegalArgumentException if maxCapacity is less than 1 or courseName is empty
+         * Reads key=value settings, ignoring anything else
+         * @param args Command-line arguments following --load-test
+         * @return The configured generator
+         * @throws IllegalArgumentException if a setting is malformed
          */
-        public Course(String courseName, int maxCapacity) {
-            if (courseName == null || courseName.trim().isEmpty()) {
-                throw new IllegalArgumentException("Course name cannot be empty");
+        static LoadGenerator fromArgs(String[] args) {
+            LoadGenerator generator = new LoadGenerator();
+            for (String arg : args) {
+                int equals = arg.indexOf('=');
+                if (equals < 0) continue;
+                String key = arg.substring(0, equals);
+                String value = arg.substring(equals + 1);
+                try {
+                    switch (key) {
+                        case "students": generator.studentCount = Integer.parseInt(value); break;
+                        case "courses": generator.courseCount = Integer.parseInt(value); break;
+                        case "capacity": generator.capacity = Integer.parseInt(value); break;
+                        case "rate": generator.rate = Double.parseDouble(value); break;
+                        case "seconds": generator.seconds = Integer.parseInt(value); break;
+                        case "mix": generator.mix = parseMix(value); break;
+                        default: throw new IllegalArgumentException("Unknown load-test setting: " + key);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid value for " + key + ": " + value);
+                }
             }
-            if (maxCapacity < 1) {
-                throw new IllegalArgumentException("Course capacity must be at least 1");
+            if (generator.studentCount < 1 || generator.courseCount < 1 || generator.capacity < 1
+                    || !(generator.rate > 0) || generator.seconds < 1) {
+                throw new IllegalArgumentException("students, courses, capacity, rate and seconds must be positive");
             }
-            this.courseId = nextCourseId++;
-            this.courseName = courseName.trim();
-            this.maxCapacity = maxCapacity;
-            this.enrolledStudents = new ArrayList<>();
+            return generator;
+        }
+
+        private static int[] parseMix(String value) {
+            String[] parts = value.split(",");
+            if (parts.length > OPERATIONS.length) {
+                throw new IllegalArgumentException("mix takes at most " + OPERATIONS.length + " percentages");
+            }
+            int[] weights = new int[OPERATIONS.length];
+            int total = 0;
+            for (int i = 0; i < parts.length; i++) {
+                weights[i] = Integer.parseInt(parts[i].trim());
+                if (weights[i] < 0) throw new IllegalArgumentException("mix percentages cannot be negative");
+                total += weights[i];
+            }
+            if (total <= 0) throw new IllegalArgumentException("mix must include at least one operation");
+            return weights;
         }
 
-        // Getter methods for accessing private fields
-        public int getCourseId() { return courseId; }
-        public String getCourseName() { return courseName; }
-        public List<Student> getEnrolledStudents() { return enrolledStudents; }
-        
         /**
-         * Attempts to enroll a student in the course if there's available capacity
-         * @param student The student to enroll
-         * @return true if enrollment successful, false if course is full or student already enrolled
+         * Populates the system, runs the storm and prints the results
+         * @param system The system under test
          */
-        public boolean enrollStudent(Student student) {
-            // Check if student is already enrolled
-            if (enrolledStudents.contains(student)) {
-                System.out.println("Student is already enrolled in this course!");
-                return false;
+        void run(CourseManagement system) {
+            PrintStream console = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            int firstStudent = Student.peekNextId();
+            int firstCourse = Course.peekNextId();
+            for (int i = 0; i < courseCount; i++) {
+                system.addCourse("Load Course " + i, capacity);
             }
-            
-            if (enrolledStudents.size() < maxCapacity) {
-                enrolledStudents.add(student);
-                student.enrollCourse(this);
-                return true;
+            for (int i = 0; i < studentCount; i++) {
+                system.addStudent("Load Student " + i);
+            }
+
+            LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+            for (int i = 0; i < latencies.length; i++) latencies[i] = new LatencyHistogram();
+            int[] cumulativeMix = new int[mix.length];
+            for (int i = 0, sum = 0; i < mix.length; i++) cumulativeMix[i] = sum += mix[i];
+            AtomicBoolean oversold = new AtomicBoolean();
+
+            ExecutorService executor = newVirtualThreadExecutor();
+            boolean virtual = executor != null;
+            int workers = virtual ? studentCount
+                : Math.min(studentCount, Runtime.getRuntime().availableProcessors() * PLATFORM_WORKERS_PER_CPU);
+            if (!virtual) {
+                executor = Executors.newFixedThreadPool(workers);
+            }
+
+            // Mean gap between one student's requests, so that all of them together hit the target rate
+            double meanGapNanos = 1e9 * studentCount / rate;
+            long start = System.nanoTime() + 50_000_000L;    // Shared start a moment ahead, once threads exist
+            long end = start + TimeUnit.SECONDS.toNanos(seconds);
+            for (int w = 0; w < workers; w++) {
+                int worker = w;
+                executor.execute(() -> runWorker(system, worker, workers, firstStudent, firstCourse,
+                    start, end, meanGapNanos, cumulativeMix, latencies));
+            }
+
+            // Watch capacity while the storm runs, not just at the end
+            Thread monitor = new Thread(() -> {
+                while (System.nanoTime() < end) {
+                    if (findOversoldCourse(system, firstCourse) != null) oversold.set(true);
+                    LockSupport.parkNanos(10_000_000L);
+                }
+            }, "w5a-load-monitor");
+            monitor.setDaemon(true);
+            monitor.start();
+
+            executor.shutdown();
+            try {
+                while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    // Requests still draining after the end of the schedule
+                }
+                monitor.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            System.setOut(console);
+
+            report(latencies, elapsed, virtual, workers);
+            Course overfull = findOversoldCourse(system, firstCourse);
+            int emptyWithWaiting = 0;
+            for (int i = 0; i < courseCount; i++) {
+                Course course = system.courses.get(firstCourse + i);
+                if (course.getEnrolledCount() < course.getMaxCapacity() && course.getWaitlistSize() > 0) {
+                    emptyWithWaiting++;
+                }
+            }
+            if (overfull != null || oversold.get()) {
+                System.out.println("FAILED: a course exceeded its capacity"
+                    + (overfull != null ? " (course " + overfull.getCourseId() + ")" : " during the run"));
+            } else {
+                System.out.println("Capacity check passed: no course exceeded maxCapacity");
+            }
+            if (emptyWithWaiting > 0) {
+                System.out.println("FAILED: " + emptyWithWaiting + " course(s) have free seats and a waitlist");
             }
-            return false;
         }
 
         /**
-         * Calculates the average grade of all enrolled students in the course
-         * @return The average grade as a percentage, or 0.0 if no students enrolled
+         * One worker's share of the simulated students, served in order of their next request
          */
-        public double calculateAverageGrade() {
-            if (enrolledStudents.isEmpty()) return 0.0;
-            double sum = 0.0;
-            for (Student student : enrolledStudents) {
-                sum += student.getGrade(this);
+        private void runWorker(CourseManagement system, int worker, int workers, int firstStudent,
+                               int firstCourse, long start, long end, double meanGapNanos,
+                               int[] cumulativeMix, LatencyHistogram[] latencies) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            // Each entry is {due time, student ID}; every student has exactly one pending request
+            PriorityQueue<long[]> schedule = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+            for (int student = worker; student < studentCount; student += workers) {
+                schedule.add(new long[] {start + nextGap(random, meanGapNanos), firstStudent + student});
             }
-            return sum / enrolledStudents.size();
-        }
-    }
+            int totalWeight = cumulativeMix[cumulativeMix.length - 1];
+            while (!schedule.isEmpty()) {
+                long[] next = schedule.poll();
+                long due = next[0];
+                if (due >= end) continue;
+                long wait = due - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
 
-    static interface Administrator {
-        void addStudent(String name);
-        void addCourse(String courseName, int maxCapacity);
-        void enrollStudentInCourse(int studentId, int courseId);
-        void updateStudentGrade(int studentId, int courseId, double grade);
-        void displayStudentInfo(int studentId);
-        void displayCourseInfo(int courseId);
-        void displayAllStudents();
-        void displayAllCourses();
-    }
+                int studentId = (int) next[1];
+                int courseId = firstCourse + random.nextInt(courseCount);
+                int pick = random.nextInt(totalWeight);
+                int operation = 0;
+                while (pick >= cumulativeMix[operation]) operation++;
+                switch (operation) {
+                    case 0: system.enrollStudentInCourse(studentId, courseId); break;
+                    case 1: system.updateStudentGrade(studentId, courseId, random.nextInt(10_001) / 100.0); break;
+                    case 2: system.displayCourseInfo(courseId); break;
+                    default: system.dropStudentFromCourse(studentId, courseId); break;
+                }
+                latencies[operation].record(System.nanoTime() - due);
 
-    static class CourseManagement implements Administrator {
-        private static CourseManagement instance;  // Singleton instance
-        private Map<Integer, Student> students;    // Repository of all students, keyed by ID
-        private Map<Integer, Course> courses;      // Repository of all courses, keyed by ID
+                next[0] = due + nextGap(random, meanGapNanos);
+                schedule.add(next);
+            }
+        }
 
-        private CourseManagement() {
-            students = new HashMap<>();
-            courses = new HashMap<>();
+        // Exponentially distributed gap, giving Poisson arrivals
+        private static long nextGap(ThreadLocalRandom random, double meanGapNanos) {
+            return (long) (-Math.log(1.0 - random.nextDouble()) * meanGapNanos);
         }
 
-        public static CourseManagement getInstance() {
-            if (instance == null) {
-                instance = new CourseManagement();
+        private Course findOversoldCourse(CourseManagement system, int firstCourse) {
+            for (int i = 0; i < courseCount; i++) {
+                Course course = system.courses.get(firstCourse + i);
+                if (course.getEnrolledCount() > course.getMaxCapacity()) return course;
             }
-            return instance;
+            return null;
         }
 
-        @Override
-        public void addStudent(String name) {
+        private void report(LatencyHistogram[] latencies, double elapsed, boolean virtual, int workers) {
+            System.out.printf("Load test: %d students, %d courses x %d seats, target %.0f ops/s for %d s (%s)%n",
+                studentCount, courseCount, capacity, rate, seconds,
+                virtual ? "virtual thread per student" : workers + " platform threads");
+            System.out.printf("%-10s %10s %12s %10s %10s %10s %10s %10s%n",
+                "Operation", "Count", "ops/s", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us");
+            LatencyHistogram all = new LatencyHistogram();
+            for (int i = 0; i < OPERATIONS.length; i++) {
+                if (latencies[i].count() > 0) printRow(OPERATIONS[i], latencies[i], elapsed);
+                all.add(latencies[i]);
+            }
+            printRow("all", all, elapsed);
+        }
+
+        private static void printRow(String name, LatencyHistogram histogram, double elapsed) {
+            long count = histogram.count();
+            System.out.printf("%-10s %10d %12.0f %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                name, count, count / elapsed,
+                histogram.valueAt(50) / 1e3, histogram.valueAt(90) / 1e3, histogram.valueAt(99) / 1e3,
+                histogram.valueAt(99.9) / 1e3, histogram.max() / 1e3);
+        }
+
+        /**
+         * Creates a virtual-thread-per-task executor if the running JDK has one
+         * Looked up reflectively so the program still compiles and runs on JDK 17.
+         * @return The executor, or null if virtual threads are unavailable
+         */
+        private static ExecutorService newVirtualThreadExecutor() {
             try {
-                Student student = new Student(name);
-                students.put(student.getStudentId(), student);
-                System.out.println("Student added successfully. ID: " + student.getStudentId());
-            } catch (IllegalArgumentException e) {
-                System.out.println(e.getMessage());
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return null;
             }
         }
+    }
 
-        @Override
-        public void addCourse(String courseName, int maxCapacity) {
+    /**
+     * Randomized checks of enrollment, the waitlist and report formatting
+     * Run with --check. Every check uses fixed seeds and works on its own courses
+     * and students, never the shared CourseManagement, so nothing reaches the
+     * console or the data directory. One line is printed per check and the exit
+     * status is 1 if any of them failed.
+     */
+    static class SelfCheck {
+        private static final long SEED = 42;
+        private static final int THREADS = 16;
+
+        /**
+         * One self-contained check; throws AssertionError (or anything else) on failure
+         */
+        interface Check {
+            void run() throws Exception;
+        }
+
+        /**
+         * Runs every check and prints the outcome of each
+         * @return true if all checks passed
+         */
+        public static boolean runAll() {
+            int failures = 0;
+            failures += run("concurrent enrollment", SelfCheck::checkConcurrentEnrollment);
+            failures += run("report formatting", SelfCheck::checkReportFormatting);
+            failures += run("waitlist order", SelfCheck::checkWaitlistOrder);
+            failures += run("waitlist under contention", SelfCheck::checkWaitlistContention);
+            failures += run("join racing a drop", SelfCheck::checkJoinRacingDrop);
+            System.out.println(failures == 0 ? "All checks passed." : failures + " check(s) failed.");
+            return failures == 0;
+        }
+
+        private static int run(String name, Check check) {
             try {
-                Course course = new Course(courseName, maxCapacity);
-                courses.put(course.getCourseId(), course);
-                System.out.println("Course added successfully. ID: " + course.getCourseId());
-            } catch (IllegalArgumentException e) {
-                System.out.println(e.getMessage());
+                check.run();
+                System.out.println("ok      " + name);
+                return 0;
+            } catch (Exception | AssertionError e) {
+                System.out.println("FAILED  " + name + ": " + e);
+                return 1;
             }
         }
 
-        @Override
-        public void enrollStudentInCourse(int studentId, int courseId) {
-            Student student = students.get(studentId);
-            Course course = courses.get(courseId);
-            
-            if (student == null || course == null) {
-                System.out.println("Student or course not found!");
-                return;
+        /**
+         * Creates students from many threads at once, then has those threads enroll
+         * and drop them across a few small courses. No course may ever hold more
+         * students than its capacity, and rosters and students must agree at the end.
+         */
+        private static void checkConcurrentEnrollment() throws Exception {
+            int courseCount = 20;
+            int capacity = 50;
+            int studentsPerThread = 125;
+            Course[] courses = new Course[courseCount];
+            for (int c = 0; c < courseCount; c++) {
+                courses[c] = new Course("Check " + c, capacity);
             }
+            Student[] students = new Student[THREADS * studentsPerThread];
+            AtomicBoolean oversold = new AtomicBoolean();
+            runConcurrently(thread -> {
+                for (int i = 0; i < studentsPerThread; i++) {
+                    students[thread * studentsPerThread + i] = new Student("Check " + thread + "-" + i);
+                }
+            }, thread -> {
+                Random random = new Random(SEED + thread);
+                for (int i = 0; i < 20_000; i++) {
+                    Student student = students[random.nextInt(students.length)];
+                    Course course = courses[random.nextInt(courseCount)];
+                    if (random.nextInt(4) == 0) {
+                        course.dropStudent(student);
+                    } else {
+                        course.tryEnroll(student);
+                    }
+                    if (course.getEnrolledCount() > capacity) oversold.set(true);
+                }
+            });
 
-            if (course.enrollStudent(student)) {
-                System.out.println("Enrollment successful!");
-            } else {
-                System.out.println("Course is full or student already enrolled!");
+            Set<Integer> ids = new HashSet<>();
+            for (Student student : students) {
+                expect(ids.add(student.getStudentId()), "student ID " + student.getStudentId() + " given out twice");
+            }
+            expect(!oversold.get(), "a course exceeded its capacity during the run");
+            for (Course course : courses) {
+                List<Student> roster = course.getEnrolledStudents();
+                expect(roster.size() <= capacity, "course " + course.getCourseId() + " holds " + roster.size());
+                expect(new HashSet<>(roster).size() == roster.size(), "duplicate on roster of " + course.getCourseId());
+                for (Student student : roster) {
+                    expect(student.getEnrolledCourses().contains(course),
+                        "student " + student.getStudentId() + " on a roster but missing the course");
+                }
+            }
+            for (Student student : students) {
+                for (Course course : student.getEnrolledCourses()) {
+                    expect(course.getEnrolledStudents().contains(student),
+                        "student " + student.getStudentId() + " lists a course whose roster lacks them");
+                }
             }
         }
 
-        @Override
-        public void updateStudentGrade(int studentId, int courseId, double grade) {
-            Student student = students.get(studentId);
-            Course course = courses.get(courseId);
-            
-            if (student == null || course == null) {
-                System.out.println("Student or course not found!");
-                return;
+        /**
+         * Writes values through ReportWriter and compares the bytes with String.format
+         * The output is large enough to drain the buffer many times. Known rounding
+         * ties and values past the fast path are included.
+         */
+        private static void checkReportFormatting() throws Exception {
+            double[] special = {0.0, -0.0, 1.005, 2.675, 0.125, 0.135, 99.995, 100.0, -1.005, -0.001,
+                0.004999999, 12.345, 1e15, 1e16, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+            long[] specialLongs = {0, -1, 9, 10, Long.MAX_VALUE, Long.MIN_VALUE};
+            Random random = new Random(SEED);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            StringBuilder expected = new StringBuilder();
+            try (ReportWriter out = new ReportWriter(bytes, false)) {
+                for (int i = 0; i < 200_000; i++) {
+                    double value;
+                    if (i < special.length) {
+                        value = special[i];
+                    } else {
+                        switch (i % 4) {
+                            case 0: value = random.nextInt(10_001) / 100.0; break;     // Grades as entered
+                            case 1: value = random.nextDouble() * 100; break;          // Averages
+                            case 2: value = random.nextInt(100_001) / 1000.0; break;   // Often a tie
+                            default: value = (random.nextDouble() - 0.5) * 1e9; break;
+                        }
+                    }
+                    long number = i < specialLongs.length ? specialLongs[i] : random.nextLong() >> random.nextInt(64);
+                    out.fixed2(value).text("|").integer(number).text("|\u00c6r\u00f8|").newline();
+                    expected.append(String.format("%.2f", value)).append('|').append(number).append("|\u00c6r\u00f8|")
+                        .append(System.lineSeparator());
+                }
             }
-
-            try {
-                student.updateGrade(course, grade);
-                System.out.println("Grade updated successfully!");
-            } catch (IllegalArgumentException e) {
-                System.out.println(e.getMessage());
+            String actual = bytes.toString(StandardCharsets.UTF_8.name());
+            if (!actual.equals(expected.toString())) {
+                int at = 0;
+                while (actual.charAt(at) == expected.charAt(at)) at++;
+                int from = Math.max(0, actual.lastIndexOf('\n', at) + 1);
+                int to = Math.min(at + 20, Math.min(actual.length(), expected.length()));
+                throw new AssertionError("wrote \"" + actual.substring(from, to) + "\", expected \""
+                    + expected.substring(from, to) + "\"");
             }
         }
 
-        @Override
-        public void displayStudentInfo(int studentId) {
-            Student student = students.get(studentId);
-            if (student == null) {
-                System.out.println("Student not found!");
-                return;
+        /**
+         * Fills a two-seat course far past capacity, across several waitlist segments,
+         * then drops and rejoins students and compares every promotion with a plain queue
+         */
+        private static void checkWaitlistOrder() {
+            Course course = new Course("Check waitlist", 2);
+            Student[] students = new Student[700];
+            Deque<Student> queue = new ArrayDeque<>();
+            for (int i = 0; i < students.length; i++) {
+                students[i] = new Student("Check " + i);
+                EnrollmentResult result = course.enrollOrWait(students[i]);
+                expect(result == (i < 2 ? EnrollmentResult.ENROLLED : EnrollmentResult.WAITLISTED),
+                    "student " + i + " got " + result);
+                if (i >= 2) queue.add(students[i]);
             }
+            expect(course.getWaitlistPosition(students[2]) == 1, "head of the line is not at position 1");
+            expect(course.getWaitlistPosition(students[699]) == 698, "tail of the line is not at position 698");
+            expect(course.enrollOrWait(students[5]) == EnrollmentResult.DUPLICATE, "second join was accepted");
+            expect(course.getWaitlistSize() == queue.size(), "duplicate join changed the waitlist size");
 
-            System.out.println("\nStudent Information:");
-            System.out.println("ID: " + student.getStudentId());
-            System.out.println("Name: " + student.getName());
-            System.out.println("Enrolled Courses and Grades:");
-            for (Map.Entry<Course, Double> entry : student.getEnrolledCourses().entrySet()) {
-                System.out.printf("%s (ID: %d): %.2f%%\n", 
-                    entry.getKey().getCourseName(), 
-                    entry.getKey().getCourseId(), 
-                    entry.getValue());
+            // Leave the line, then rejoin at the back
+            expect(course.dropStudent(students[10]), "waiting student could not leave");
+            queue.remove(students[10]);
+            expect(course.getWaitlistPosition(students[10]) == -1, "student still waiting after leaving");
+            expect(!course.dropStudent(students[10]), "student left the line twice");
+            expect(course.getWaitlistSize() == queue.size(), "leaving did not shrink the waitlist");
+            expect(course.enrollOrWait(students[10]) == EnrollmentResult.WAITLISTED, "student could not rejoin");
+            queue.add(students[10]);
+
+            List<Student> roster = new ArrayList<>(course.getEnrolledStudents());
+            for (int k = 0; k < 600; k++) {
+                expect(course.dropStudent(roster.remove(0)), "enrolled student could not be dropped");
+                roster.add(queue.poll());
+                expect(course.getEnrolledStudents().equals(roster), "promotion " + k + " out of order");
             }
+            expect(course.getWaitlistSize() == queue.size(), "waitlist size " + course.getWaitlistSize()
+                + " after promotions, expected " + queue.size());
+            expect(course.getWaitlistedStudents().equals(new ArrayList<>(queue)), "waitlist contents differ");
+            expect(course.getWaitlistPosition(queue.peek()) == 1, "new head of the line is not at position 1");
         }
 
-        @Override
-        public void displayCourseInfo(int courseId) {
-            Course course = courses.get(courseId);
-            if (course == null) {
-                System.out.println("Course not found!");
-                return;
+        /**
+         * Has many threads join, leave and drop on small courses at once. No course may
+         * go over capacity or keep a free seat while anyone waits, and the waitlist size
+         * must match the students actually waiting.
+         */
+        private static void checkWaitlistContention() throws Exception {
+            for (int round = 0; round < 10; round++) {
+                int capacity = 4 + round;
+                Course course = new Course("Check contention " + round, capacity);
+                Student[] students = new Student[200];
+                for (int i = 0; i < students.length; i++) {
+                    students[i] = new Student("Check " + i);
+                }
+                AtomicBoolean oversold = new AtomicBoolean();
+                long seed = SEED + round * THREADS;
+                runConcurrently(thread -> {
+                    Random random = new Random(seed + thread);
+                    for (int i = 0; i < 10_000; i++) {
+                        Student student = students[random.nextInt(students.length)];
+                        if (random.nextInt(3) == 0) {
+                            course.dropStudent(student);
+                        } else {
+                            course.enrollOrWait(student);
+                        }
+                        if (course.getEnrolledCount() > capacity) oversold.set(true);
+                    }
+                });
+
+                expect(!oversold.get(), "course went over capacity in round " + round);
+                List<Student> roster = course.getEnrolledStudents();
+                int waiting = 0;
+                for (Student student : students) {
+                    if (course.getWaitlistPosition(student) > 0) {
+                        waiting++;
+                        expect(!roster.contains(student), "student both enrolled and waiting in round " + round);
+                    }
+                }
+                expect(course.getWaitlistSize() == waiting, "waitlist size " + course.getWaitlistSize()
+                    + " but " + waiting + " students waiting in round " + round);
+                expect(course.getWaitlistedStudents().size() == waiting, "waitlist listing disagrees in round " + round);
+                expect(roster.size() == capacity || waiting == 0,
+                    roster.size() + " of " + capacity + " seats taken with " + waiting + " waiting in round " + round);
             }
+        }
 
-            System.out.println("\nCourse Information:");
-            System.out.println("ID: " + course.getCourseId());
-            System.out.println("Name: " + course.getCourseName());
-            System.out.println("Average Grade: " + String.format("%.2f%%", course.calculateAverageGrade()));
-            System.out.println("Enrolled Students:");
-            for (Student student : course.getEnrolledStudents()) {
-                System.out.printf("%s (ID: %d): %.2f%%\n", 
-                    student.getName(), 
-                    student.getStudentId(), 
-                    student.getGrade(course));
+        /**
+         * Races one join against one drop on many one-seat courses
+         * A joiner can see the course full just before the seat frees. It must still
+         * end up in the seat rather than waiting behind an empty course.
+         */
+        private static void checkJoinRacingDrop() throws Exception {
+            int pairs = 50_000;
+            Course[] courses = new Course[pairs];
+            Student[] holders = new Student[pairs];
+            Student[] joiners = new Student[pairs];
+            for (int i = 0; i < pairs; i++) {
+                courses[i] = new Course("Check race " + i, 1);
+                holders[i] = new Student("Check holder " + i);
+                joiners[i] = new Student("Check joiner " + i);
+                courses[i].tryEnroll(holders[i]);
+            }
+            // Random delays before each drop sweep it across the joiner's window
+            int[] delays = new Random(SEED).ints(pairs, 0, 400).toArray();
+            CyclicBarrier together = new CyclicBarrier(2);
+            Thread dropper = new Thread(() -> {
+                try {
+                    for (int i = 0; i < pairs; i++) {
+                        together.await();
+                        for (int spin = delays[i]; spin > 0; spin--) {
+                            Thread.onSpinWait();
+                        }
+                        courses[i].dropStudent(holders[i]);
+                    }
+                } catch (InterruptedException | BrokenBarrierException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "w5a-check-dropper");
+            dropper.start();
+            for (int i = 0; i < pairs; i++) {
+                together.await();
+                courses[i].enrollOrWait(joiners[i]);
             }
+            dropper.join();
+            int stranded = 0;
+            for (Course course : courses) {
+                if (course.getEnrolledCount() == 0) stranded++;
+            }
+            expect(stranded == 0, stranded + " joiner(s) left waiting for a free seat");
         }
 
-        @Override
-        public void displayAllStudents() {
-            System.out.println("\nAll Students:");
-            for (Student student : students.values()) {
-                System.out.printf("ID: %d, Name: %s\n", 
-                    student.getStudentId(), 
-                    student.getName());
+        /**
+         * Runs each phase on THREADS threads released together, finishing one phase before the next
+         */
+        private static void runConcurrently(IntConsumer... phases) throws Exception {
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            try {
+                for (IntConsumer phase : phases) {
+                    CountDownLatch start = new CountDownLatch(1);
+                    List<Future<?>> done = new ArrayList<>();
+                    for (int t = 0; t < THREADS; t++) {
+                        int thread = t;
+                        done.add(executor.submit(() -> {
+                            start.await();
+                            phase.accept(thread);
+                            return null;
+                        }));
+                    }
+                    start.countDown();
+                    for (Future<?> future : done) {
+                        future.get();
+                    }
+                }
+            } finally {
+                executor.shutdown();
             }
         }
 
-        @Override
-        public void displayAllCourses() {
-            System.out.println("\nAll Courses:");
-            for (Course course : courses.values()) {
-                System.out.printf("ID: %d, Name: %s, Average Grade: %.2f%%\n", 
-                    course.getCourseId(), 
-                    course.getCourseName(), 
-                    course.calculateAverageGrade());
+        private static void expect(boolean condition, String message) {
+            if (!condition) {
+                throw new AssertionError(message);
             }
         }
     }
@@ -291,10 +2948,70 @@ public class w5a {
     // Single instance of the course management system
     private static CourseManagement system = CourseManagement.getInstance();
 
+    // Rows shown per page when listing all students or courses
+    private static final int PAGE_SIZE = 50;
+
     /**
      * Main program loop that displays menu and processes user choices
+     * Pass --data-dir <dir> to keep students, courses and grades between runs,
+     * --report <students|courses> <file> to write a full listing to a file and exit,
+     * --load-test [key=value ...] to run LoadGenerator, or --check to run SelfCheck.
      */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--bench-enroll")) {
+            EnrollmentBenchmark.run();
+            return;
+        }
+        if (args.length == 1 && args[0].equals("--check")) {
+            if (!SelfCheck.runAll()) {
+                System.exit(1);
+            }
+            return;
+        }
+        String reportKind = null;
+        Path reportFile = null;
+        Path dataDir = null;
+        LoadGenerator loadTest = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--load-test")) {
+                try {
+                    loadTest = LoadGenerator.fromArgs(Arrays.copyOfRange(args, i + 1, args.length));
+                } catch (IllegalArgumentException e) {
+                    System.out.println(e.getMessage());
+                    return;
+                }
+            } else if (args[i].equals("--data-dir") && i + 1 < args.length) {
+                dataDir = Paths.get(args[++i]);
+            } else if (args[i].equals("--report") && i + 2 < args.length) {
+                reportKind = args[++i];
+                reportFile = Paths.get(args[++i]);
+            }
+        }
+        if (dataDir != null) {
+            try {
+                // The load test would leave thousands of made-up records in real data
+                if (loadTest != null && !isEmptyDirectory(dataDir)) {
+                    System.out.println("Refusing to run the load test against existing data in " + dataDir
+                        + "; pass an empty or new directory");
+                    return;
+                }
+                system.enableDurability(dataDir);
+                System.out.println("Loaded saved data from " + dataDir);
+            } catch (IOException e) {
+                System.out.println("Could not load saved data: " + e.getMessage());
+                return;
+            }
+        }
+        if (reportKind != null) {
+            writeReport(reportKind, reportFile);
+            system.shutdown();
+            return;
+        }
+        if (loadTest != null) {
+            loadTest.run(system);
+            system.shutdown();
+            return;
+        }
         while (true) {
             displayMenu();
             int choice = getIntInput("Enter your choice: ");
@@ -324,27 +3041,33 @@ public class w5a {
                     int courseId = getIntInput("Enter course ID: ");
                     system.enrollStudentInCourse(studentId, courseId);
                     break;
-                case 4:  // Update student's grade
+                case 4:  // Drop student from course
+                    studentId = getIntInput("Enter student ID: ");
+                    courseId = getIntInput("Enter course ID: ");
+                    system.dropStudentFromCourse(studentId, courseId);
+                    break;
+                case 5:  // Update student's grade
                     studentId = getIntInput("Enter student ID: ");
                     courseId = getIntInput("Enter course ID: ");
                     double grade = getDoubleInput("Enter grade (0-100): ");
                     system.updateStudentGrade(studentId, courseId, grade);
                     break;
-                case 5:  // Display all students
-                    system.displayAllStudents();
+                case 6:  // Display all students
+                    showPages("All Students:", Student.FIRST_ID - 1, system::renderStudents);
                     break;
-                case 6:  // Display all courses
-                    system.displayAllCourses();
+                case 7:  // Display all courses
+                    showPages("All Courses:", Course.FIRST_ID - 1, system::renderCourses);
                     break;
-                case 7:  // Display specific student info
+                case 8:  // Display specific student info
                     studentId = getIntInput("Enter student ID: ");
                     system.displayStudentInfo(studentId);
                     break;
-                case 8:  // Display specific course info
+                case 9:  // Display specific course info
                     courseId = getIntInput("Enter course ID: ");
                     system.displayCourseInfo(courseId);
                     break;
-                case 9:  // Exit the program
+                case 10:  // Exit the program
+                    system.shutdown();
                     System.out.println("Goodbye!");
                     return;
                 default:
@@ -353,6 +3076,74 @@ public class w5a {
         }
     }
 
+    /**
+     * One page of a listing; see CourseManagement.renderStudents
+     */
+    interface PageRenderer {
+        int render(ReportWriter out, int afterId, int limit) throws IOException;
+    }
+
+    /**
+     * Shows a listing one page at a time, asking before each further page
+     * @param title Heading printed above the first page
+     * @param startCursor Cursor that selects the first page
+     * @param pages Renders a page and returns the next cursor
+     */
+    private static void showPages(String title, int startCursor, PageRenderer pages) {
+        try {
+            ReportWriter out = ReportWriter.toConsole();
+            out.newline().text(title).newline();
+            int cursor = pages.render(out, startCursor, PAGE_SIZE);
+            out.flush();
+            while (cursor >= 0) {
+                System.out.print("Show more? (y/n): ");
+                if (!scanner.nextLine().trim().equalsIgnoreCase("y")) break;
+                cursor = pages.render(out, cursor, PAGE_SIZE);
+                out.flush();
+            }
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Streams a full student or course listing to a file
+     * @param kind "students" or "courses"
+     * @param file The file to write
+     */
+    private static void writeReport(String kind, Path file) {
+        long start = System.nanoTime();
+        try (ReportWriter out = ReportWriter.toFile(file)) {
+            if (kind.equals("students")) {
+                system.renderStudents(out, Student.FIRST_ID - 1, Integer.MAX_VALUE);
+            } else if (kind.equals("courses")) {
+                system.renderCourses(out, Course.FIRST_ID - 1, Integer.MAX_VALUE);
+            } else {
+                System.out.println("Unknown report type: " + kind + " (use students or courses)");
+                return;
+            }
+        } catch (IOException e) {
+            System.out.println("Could not write report: " + e.getMessage());
+            return;
+        }
+        System.out.printf("Wrote %s report to %s in %.1f ms\n", kind, file, (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * Checks whether a directory is missing or has no entries
+     * @param dir The directory to check
+     * @return true if there is nothing in it
+     * @throws IOException if the path is not a directory or cannot be listed
+     */
+    private static boolean isEmptyDirectory(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return true;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            return !entries.iterator().hasNext();
+        }
+    }
+
     /**
      * Displays the main menu options to the user
      */
@@ -361,12 +3152,13 @@ public class w5a {
         System.out.println("1. Add Student");
         System.out.println("2. Add Course");
         System.out.println("3. Enroll Student in Course");
-        System.out.println("4. Update Student Grade");
-        System.out.println("5. Display All Students");
-        System.out.println("6. Display All Courses");
-        System.out.println("7. Display Student Information");
-        System.out.println("8. Display Course Information");
-        System.out.println("9. Exit");
+        System.out.println("4. Drop Student from Course");
+        System.out.println("5. Update Student Grade");
+        System.out.println("6. Display All Students");
+        System.out.println("7. Display All Courses");
+        System.out.println("8. Display Student Information");
+        System.out.println("9. Display Course Information");
+        System.out.println("10. Exit");
     }
 
     /**
@@ -12,7 +12,7 @@ public class Course {
     private String id;              // Unique identifier for the course
     private String name;            // Name of the course
     private int maxStudents;        // Maximum number of students allowed
-    private List<Student> enrolledStudents;  // List of currently enrolled students
+    private Set<Student> enrolledStudents;   // Enrolled students, kept in enrollment order
 
     /**
      * Constructs a new Course with specified details.
@@ -25,14 +25,15 @@ public class Course {
         this.id = id;
         this.name = name;
         this.maxStudents = maxStudents;
-        this.enrolledStudents = new ArrayList<>();
+        this.enrolledStudents = new LinkedHashSet<>();
     }
 
     // Getter methods
     public String getId() { return id; }
     public String getName() { return name; }
     public int getMaxStudents() { return maxStudents; }
-    public List<Student> getEnrolledStudents() { return enrolledStudents; }
+    public List<Student> getEnrolledStudents() { return new ArrayList<>(enrolledStudents); }
+    public int getEnrolledCount() { return enrolledStudents.size(); }
 
     /**
      * Attempts to enroll a student in this course.
@@ -41,6 +42,7 @@ public class Course {
      * @return true if enrollment successful, false if course is full or student already enrolled
      */
     public boolean enrollStudent(Student student) {
+        // The set lookup is constant time, so filling a large course stays linear
         if (enrolledStudents.size() < maxStudents && !enrolledStudents.contains(student)) {
             enrolledStudents.add(student);
             return true;
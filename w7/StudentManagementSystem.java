@@ -550,7 +550,7 @@ public class StudentManagementSystem extends JFrame {
             courseTableModel.addRow(new Object[]{
                 course.getId(), 
                 course.getName(), 
-                course.getEnrolledStudents().size() + "/" + course.getMaxStudents()
+                course.getEnrolledCount() + "/" + course.getMaxStudents()
             });
         }
     }